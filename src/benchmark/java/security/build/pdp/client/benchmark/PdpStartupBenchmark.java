@@ -0,0 +1,105 @@
+package security.build.pdp.client.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpServer;
+import security.build.pdp.client.PdpClient;
+import security.build.pdp.client.PdpRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to the first authorization decision of a freshly started process, to compare a JVM with a native
+ * image of the same code.
+ *
+ * Calls the PDP configured through the environment (PDP_HOSTNAME, PDP_PORT, ...) if PDP_HOSTNAME is set, or else an
+ * in-process stub that allows every request, so that only client-side costs are measured.
+ *
+ * Built with the native profile:
+ * - JVM:    mvn -Pnative -DskipTests package exec:exec
+ * - native: ./target/pdp-startup-benchmark
+ */
+public class PdpStartupBenchmark {
+
+    private static final int SteadyStateDecisions = 100;
+
+    private static HttpServer startStubPdp() throws IOException {
+        byte[] body = "{\"result\":true}".getBytes(StandardCharsets.UTF_8);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream request = exchange.getRequestBody()) {
+                while (request.read() != -1) {
+                    // Drain the request body.
+                }
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        server.start();
+
+        return server;
+    }
+
+    private static String uptime() {
+        try {
+            return String.format("%dms", ManagementFactory.getRuntimeMXBean().getUptime());
+        } catch (Throwable throwable) {
+            return "unavailable";
+        }
+    }
+
+    private static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public static void main(String[] args) throws Throwable {
+        long mainStart = System.nanoTime();
+        String uptimeAtMain = uptime();
+
+        HttpServer stub = System.getenv(PdpClient.EnvHostname) == null ? startStubPdp() : null;
+
+        long constructStart = System.nanoTime();
+        PdpClient.Builder builder = new PdpClient.Builder();
+        if (stub != null) {
+            builder.hostname("localhost").port(stub.getAddress().getPort());
+        }
+        PdpClient client = builder.build();
+        double constructMillis = millisSince(constructStart);
+
+        long firstDecisionStart = System.nanoTime();
+        JsonNode decision = client.getJsonResponse(new PdpRequest());
+        double firstDecisionMillis = millisSince(firstDecisionStart);
+        double mainToFirstDecisionMillis = millisSince(mainStart);
+
+        long steadyStateStart = System.nanoTime();
+        for (int i = 0; i < SteadyStateDecisions; i++) {
+            client.getJsonResponse(new PdpRequest());
+        }
+        double steadyStateMillis = millisSince(steadyStateStart) / SteadyStateDecisions;
+
+        System.out.printf("decision:                 %s%n", decision);
+        System.out.printf("process uptime at main:   %s%n", uptimeAtMain);
+        System.out.printf("client construction:      %.2fms%n", constructMillis);
+        System.out.printf("first decision:           %.2fms%n", firstDecisionMillis);
+        System.out.printf("main to first decision:   %.2fms%n", mainToFirstDecisionMillis);
+        System.out.printf("steady state decision:    %.3fms (average of %d)%n", steadyStateMillis, SteadyStateDecisions);
+
+        if (stub != null) {
+            stub.stop(0);
+        }
+
+        // OkHttp keeps non-daemon threads alive for pooled connections.
+        System.exit(0);
+    }
+}
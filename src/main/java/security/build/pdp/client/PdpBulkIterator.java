@@ -0,0 +1,123 @@
+package security.build.pdp.client;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Evaluates requests pulled from a source iterator with a bounded number of requests in flight.
+ *
+ * Requests are only read from the source when the consumer asks for results, so at most maxInFlight requests and
+ * results are held in memory at any time, no matter how slow the Policy Decision Point is. The evaluations run
+ * asynchronously, so no thread is held per request in flight, and an abandoned iterator holds no thread at all.
+ */
+class PdpBulkIterator implements Iterator<PdpBulkResult>, AutoCloseable {
+
+    private final PdpClient client;
+    private final Iterator<PdpRequest> source;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final PdpPriority priority;
+
+    private final ArrayDeque<CompletableFuture<PdpBulkResult>> pending = new ArrayDeque<>();
+    private final BlockingQueue<PdpBulkResult> completed = new LinkedBlockingQueue<>();
+
+    private long nextIndex = 0;
+    private int inFlight = 0;
+    private boolean closed = false;
+
+    PdpBulkIterator(PdpClient client, Iterator<PdpRequest> source, int maxInFlight, boolean ordered, PdpPriority priority) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format("maxInFlight must be positive: %d", maxInFlight));
+        }
+
+        this.client = client;
+        this.source = source;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+        this.priority = priority;
+    }
+
+    /**
+     * Pulls requests from the source until maxInFlight requests are being evaluated or the source is exhausted.
+     */
+    private void fill() {
+        while (!this.closed && this.inFlight < this.maxInFlight && this.source.hasNext()) {
+            long index = this.nextIndex++;
+            PdpRequest request = this.source.next();
+
+            CompletableFuture<PdpBulkResult> result = this.client.getJsonResponseAsync(request, this.priority)
+                    .handle((response, failure) -> new PdpBulkResult(index, request, response, unwrap(failure)));
+
+            if (this.ordered) {
+                this.pending.add(result);
+            } else {
+                result.thenAccept(this.completed::add);
+            }
+
+            this.inFlight++;
+        }
+    }
+
+    /**
+     * @return the failure of the evaluation, without the wrapper added by the future.
+     */
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    @Override
+    public boolean hasNext() {
+        this.fill();
+
+        if (this.inFlight == 0) {
+            this.close();
+
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public PdpBulkResult next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        PdpBulkResult result;
+
+        try {
+            result = this.ordered ? this.pending.poll().get() : this.completed.take();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            this.close();
+
+            throw new CancellationException("Interrupted while waiting for a bulk evaluation result");
+        } catch (ExecutionException exception) {
+            // Results capture their own failures, so this can only happen if building the result itself is broken.
+            throw new IllegalStateException(exception.getCause());
+        }
+
+        this.inFlight--;
+
+        // Start the next evaluation right away, so the pipeline stays full while the consumer handles this result.
+        this.fill();
+
+        return result;
+    }
+
+    /**
+     * Stops reading from the source. Evaluations in flight are abandoned, and their results are dropped when they
+     * complete.
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.pending.clear();
+            this.completed.clear();
+        }
+    }
+}
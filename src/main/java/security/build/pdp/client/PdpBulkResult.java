@@ -0,0 +1,49 @@
+package security.build.pdp.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Holds the outcome of a single request evaluated as part of a bulk evaluation.
+ */
+public class PdpBulkResult {
+    long index;
+    PdpRequest request;
+    JsonNode response;
+    Throwable failure;
+
+    public PdpBulkResult(long index, PdpRequest request, JsonNode response, Throwable failure) {
+        this.index = index;
+        this.request = request;
+        this.response = response;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the zero-based position of the request in the source it was read from.
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    public PdpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return the JSON object response from the Policy Decision Point, or null if the evaluation failed.
+     */
+    public JsonNode getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the failure that ended the evaluation after all retries, or null if the evaluation succeeded.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+}
@@ -9,15 +9,27 @@ import net.jodah.failsafe.RetryPolicy;
 import okhttp3.*;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Implements a configurable HTTP client that request authorization decisions from a Policy Decision Point based on the
@@ -36,6 +48,9 @@ public class PdpClient implements Serializable {
     public static int DefaultConnectionTimeoutMilliseconds = 5000;
     public static int DefaultRetryMaxAttempts = 2;
     public static int DefaultRetryBackoffMilliseconds = 250;
+    public static double DefaultMetricsSampleRate = 0;
+    public static boolean DefaultMetricsInstrument = false;
+    public static int DefaultMaxConcurrentRequests = 64;
 
     public static String EnvPort = "PDP_PORT";
     public static String EnvHostname = "PDP_HOSTNAME";
@@ -44,6 +59,9 @@ public class PdpClient implements Serializable {
     public static String EnvConnectionTimeoutMilliseconds = "PDP_CONNECTION_TIMEOUT_MILLISECONDS";
     public static String EnvRetryMaxAttempts = "PDP_RETRY_MAX_ATTEMPTS";
     public static String EnvRetryBackoffMilliseconds = "PDP_RETRY_BACKOFF_MILLISECONDS";
+    public static String EnvMetricsSampleRate = "PDP_METRICS_SAMPLE_RATE";
+    public static String EnvMetricsInstrument = "PDP_METRICS_INSTRUMENT";
+    public static String EnvMaxConcurrentRequests = "PDP_MAX_CONCURRENT_REQUESTS";
 
     /**
      * Allows constructing a new PdpClient object with desired configuration.
@@ -57,6 +75,12 @@ public class PdpClient implements Serializable {
         private int connectionTimeoutMilliseconds = PdpClient.DefaultConnectionTimeoutMilliseconds;
         private int retryMaxAttempts = PdpClient.DefaultRetryMaxAttempts;
         private int retryBackoffMilliseconds = PdpClient.DefaultRetryBackoffMilliseconds;
+        private double metricsSampleRate = PdpClient.DefaultMetricsSampleRate;
+        private boolean metricsInstrument = PdpClient.DefaultMetricsInstrument;
+        private int maxConcurrentRequests = PdpClient.DefaultMaxConcurrentRequests;
+        private PdpMetricsListener metricsListener;
+        private PdpPriorityLanes priorityLanes;
+        private PdpPriority defaultPriority = PdpPriority.INTERACTIVE;
 
         public Builder() {
         }
@@ -103,54 +127,320 @@ public class PdpClient implements Serializable {
             return this;
         }
 
+        /**
+         * Sets the fraction of evaluations for which OPA is asked to report its server-side metrics.
+         *
+         * Metrics make the response larger, so they are only requested for a sample of evaluations.
+         *
+         * @param metricsSampleRate a fraction between 0 (never) and 1 (always).
+         */
+        public Builder metricsSampleRate(double metricsSampleRate) {
+            this.metricsSampleRate = metricsSampleRate;
+
+            return this;
+        }
+
+        /**
+         * Sets whether sampled evaluations also ask OPA for its detailed instrumentation metrics.
+         */
+        public Builder metricsInstrument(boolean metricsInstrument) {
+            this.metricsInstrument = metricsInstrument;
+
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of asynchronous calls run at once. OkHttp only runs 5 calls per host by default, and
+         * queues the others where they can't be observed.
+         */
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+
+            return this;
+        }
+
+        public Builder metricsListener(PdpMetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+
+            return this;
+        }
+
+        /**
+         * Schedules calls by priority class through the given lanes, which may be shared with other clients. Calls are
+         * not scheduled by default.
+         */
+        public Builder priorityLanes(PdpPriorityLanes priorityLanes) {
+            this.priorityLanes = priorityLanes;
+
+            return this;
+        }
+
+        /**
+         * Sets the priority of calls that don't specify one. Defaults to INTERACTIVE.
+         */
+        public Builder defaultPriority(PdpPriority defaultPriority) {
+            this.defaultPriority = defaultPriority;
+
+            return this;
+        }
+
         public PdpClient build() {
-            PdpClient client = new PdpClient();
+            PdpClient client = new PdpClient(new PdpClientConfiguration(
+                    this.port,
+                    this.hostname,
+                    this.schema,
+                    this.policyPath,
+                    this.readTimeoutMilliseconds,
+                    this.connectionTimeoutMilliseconds,
+                    this.retryMaxAttempts,
+                    this.retryBackoffMilliseconds,
+                    this.metricsSampleRate,
+                    this.metricsInstrument,
+                    this.maxConcurrentRequests));
+
+            client.metricsListener = this.metricsListener;
+            client.defaultPriority = this.defaultPriority;
+            client.setPriorityLanes(this.priorityLanes);
 
-            client.port = this.port;
-            client.hostname = this.hostname;
-            client.schema = this.schema;
-            client.policyPath = this.policyPath;
-            client.readTimeoutMilliseconds = this.readTimeoutMilliseconds;
-            client.connectionTimeoutMilliseconds = this.connectionTimeoutMilliseconds;
-            client.retryMaxAttempts = this.retryMaxAttempts;
-            client.retryBackoffMilliseconds = this.retryBackoffMilliseconds;
+            return client;
+        }
+    }
 
-            client.loadHttpClient();
+    /**
+     * Holds everything a call needs, derived from a single configuration snapshot.
+     *
+     * The state is replaced as a whole whenever the configuration changes, so a call reads it once and never observes
+     * a mix of old and new values.
+     */
+    private static final class State {
+        final PdpClientConfiguration configuration;
+        final LazyHttpClient transport;
+        final LazyHttpClient client;
+        final RetryPolicy<Object> retryPolicy;
+
+        private String endpoint;
+
+        /**
+         * @param configuration the configuration
+         * @param transport the client that owns the connection pool and dispatcher of the Policy Decision Point, which
+         *                  are shared by the clients derived from it when only timeouts change
+         * @param client the client calls are made with, either the transport or a client derived from it
+         * @param retryPolicy the retry policy of evaluations without a deadline
+         */
+        State(PdpClientConfiguration configuration, LazyHttpClient transport, LazyHttpClient client, RetryPolicy<Object> retryPolicy) {
+            this.configuration = configuration;
+            this.transport = transport;
+            this.client = client;
+            this.retryPolicy = retryPolicy;
+        }
+
+        String getPdpEndpoint() throws MalformedURLException {
+            // Racing threads compute the same value, so the endpoint is cached without synchronization.
+            String endpoint = this.endpoint;
+
+            if (endpoint == null) {
+                endpoint = this.configuration.getPdpEndpoint();
+                this.endpoint = endpoint;
+            }
+
+            return endpoint;
+        }
+    }
+
+    /**
+     * Creates the HTTP client on the first call, so that constructing a PdpClient doesn't pay for initializing OkHttp,
+     * e.g. when it is created at startup but first used later. Reloads that don't need a new client share the same
+     * instance.
+     */
+    private static final class LazyHttpClient {
+        private final Supplier<OkHttpClient> factory;
+        private volatile OkHttpClient client;
+
+        LazyHttpClient(Supplier<OkHttpClient> factory) {
+            this.factory = factory;
+        }
+
+        LazyHttpClient(OkHttpClient client) {
+            this.factory = null;
+            this.client = client;
+        }
+
+        OkHttpClient get() {
+            OkHttpClient client = this.client;
+
+            if (client == null) {
+                synchronized (this) {
+                    client = this.client;
+
+                    if (client == null) {
+                        client = this.factory.get();
+                        this.client = client;
+                    }
+                }
+            }
 
             return client;
         }
+
+        /**
+         * @return the HTTP client, or null if it was never used.
+         */
+        OkHttpClient getIfCreated() {
+            return this.client;
+        }
     }
 
-    private int port = DefaultPort;
-    private String hostname = DefaultHostname;
-    private String schema = DefaultSchema;
-    private String policyPath = DefaultPolicyPath;
-    private int readTimeoutMilliseconds = DefaultReadTimeoutMilliseconds;
-    private int connectionTimeoutMilliseconds = DefaultConnectionTimeoutMilliseconds;
-    private int retryMaxAttempts = DefaultRetryMaxAttempts;
-    private int retryBackoffMilliseconds = DefaultRetryBackoffMilliseconds;
+    private final Object reloadLock = new Object();
+    private volatile State state;
+    private volatile PdpMetricsListener metricsListener;
+    private volatile PdpPriorityLanes priorityLanes;
+    private volatile PdpPriority defaultPriority = PdpPriority.INTERACTIVE;
 
-    private RetryPolicy<Object> retryPolicy;
-    private OkHttpClient client;
     private ObjectMapper mapper;
 
     public PdpClient() {
-        this.loadConfigurationFromEnvironment();
+        this(PdpClientConfiguration.defaults().withOverrides(System.getenv()));
+    }
 
-        this.mapper = new ObjectMapper();
+    /**
+     * Creates a client from a complete configuration, without reading the environment, so that a single HTTP client is
+     * built.
+     *
+     * @param configuration the configuration
+     */
+    private PdpClient(PdpClientConfiguration configuration) {
+        this.mapper = new ObjectMapper().registerModule(new PdpModelModule());
+
+        this.applyConfiguration(configuration);
     }
 
-    private void loadHttpClient() {
-        this.retryPolicy = new RetryPolicy<>()
+    private static RetryPolicy<Object> newRetryPolicy(PdpClientConfiguration configuration) {
+        int retryBackoffMilliseconds = configuration.getRetryBackoffMilliseconds();
+
+        return new RetryPolicy<>()
                 .handle(IOException.class)
-                .withBackoff(this.retryBackoffMilliseconds, (this.retryBackoffMilliseconds*this.retryMaxAttempts)+1, ChronoUnit.MILLIS)
-                .withMaxAttempts(this.retryMaxAttempts);
+                .withBackoff(retryBackoffMilliseconds, (retryBackoffMilliseconds*configuration.getRetryMaxAttempts())+1, ChronoUnit.MILLIS)
+                .withMaxAttempts(configuration.getRetryMaxAttempts())
+                .onRetry(attempted -> PdpFlightRecorder.commitRetry(configuration, attempted));
+    }
 
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(this.connectionTimeoutMilliseconds, TimeUnit.MILLISECONDS)
-                .readTimeout(this.readTimeoutMilliseconds, TimeUnit.MILLISECONDS)
-                .retryOnConnectionFailure(false) // Disable OkHTTPs automatic retries -- they don't provide enough granularity and are harder to test.
-                .build();
+    private static OkHttpClient.Builder configureHttpClient(OkHttpClient.Builder builder, PdpClientConfiguration configuration) {
+        return builder
+                .connectTimeout(configuration.getConnectionTimeoutMilliseconds(), TimeUnit.MILLISECONDS)
+                .readTimeout(configuration.getReadTimeoutMilliseconds(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false); // Disable OkHTTPs automatic retries -- they don't provide enough granularity and are harder to test.
+    }
+
+    /**
+     * Atomically replaces the configuration of this client.
+     *
+     * The connection pool is kept when the Policy Decision Point stays the same. When it changes, a new pool is
+     * created and the old client is drained: calls in progress finish on it, its dispatcher is shut down once they are
+     * done, and its connections are closed as they become idle.
+     *
+     * @param configuration the new configuration
+     */
+    void applyConfiguration(PdpClientConfiguration configuration) {
+        synchronized (this.reloadLock) {
+            State previous = this.state;
+            LazyHttpClient transport;
+            LazyHttpClient client;
+
+            if (previous == null || !previous.configuration.hasSameTransport(configuration)) {
+                transport = new LazyHttpClient(() -> this.newHttpClient(new OkHttpClient.Builder(), configuration));
+                client = transport;
+
+                // Derived clients share the dispatcher and pool of the previous transport, so this drains them too.
+                OkHttpClient previousTransport = previous != null ? previous.transport.getIfCreated() : null;
+                if (previousTransport != null) {
+                    retire(previousTransport);
+                }
+            } else {
+                PdpClientConfiguration current = previous.configuration;
+                LazyHttpClient sharedTransport = previous.transport;
+                transport = sharedTransport;
+
+                if (current.getConnectionTimeoutMilliseconds() == configuration.getConnectionTimeoutMilliseconds()
+                        && current.getReadTimeoutMilliseconds() == configuration.getReadTimeoutMilliseconds()) {
+                    client = previous.client;
+                } else {
+                    // Derived clients share the connection pool and dispatcher of the transport.
+                    client = new LazyHttpClient(() -> this.newHttpClient(sharedTransport.get().newBuilder(), configuration));
+                }
+
+                this.configureDispatcher(transport.getIfCreated(), configuration);
+            }
+
+            this.state = new State(configuration, transport, client, newRetryPolicy(configuration));
+        }
+    }
+
+    private OkHttpClient newHttpClient(OkHttpClient.Builder builder, PdpClientConfiguration configuration) {
+        OkHttpClient client = configureHttpClient(builder, configuration).build();
+
+        // The dispatcher limits follow the latest configuration, which may have been reloaded since.
+        this.configureDispatcher(client, this.state.configuration);
+
+        return client;
+    }
+
+    /**
+     * Shuts down a client replaced by a reload once it has no calls left, so that calls in progress or queued in its
+     * dispatcher are not rejected.
+     */
+    private static void retire(OkHttpClient client) {
+        Dispatcher dispatcher = client.dispatcher();
+        Runnable drain = () -> {
+            dispatcher.executorService().shutdown();
+            client.connectionPool().evictAll();
+        };
+
+        dispatcher.setIdleCallback(drain);
+
+        // The dispatcher only calls back when a call finishes, so drain it right away if it is already idle.
+        if (dispatcher.runningCallsCount() == 0 && dispatcher.queuedCallsCount() == 0) {
+            drain.run();
+        }
+    }
+
+    /**
+     * Closes the idle connections of a pool replaced by a reload, once a call that used it gave its connection back.
+     *
+     * The pool is identified by the transport that owns it, so a reload that only derives a new client from the same
+     * transport, which may not be created yet, keeps the connections.
+     */
+    private void releaseConnection(Evaluation evaluation) {
+        LazyHttpClient transport = evaluation.transport;
+
+        if (transport != null && transport != this.state.transport) {
+            OkHttpClient client = transport.getIfCreated();
+            ConnectionPool pool = client != null ? client.connectionPool() : null;
+
+            if (pool != null) {
+                pool.evictAll();
+            }
+        }
+    }
+
+    /**
+     * Lets OkHttp run the configured number of asynchronous calls to the Policy Decision Point, and at least as many as
+     * the priority lanes admit, so that the lanes are the only queue.
+     */
+    private void configureDispatcher(OkHttpClient client, PdpClientConfiguration configuration) {
+        PdpPriorityLanes lanes = this.priorityLanes;
+        Dispatcher dispatcher = client != null ? client.dispatcher() : null;
+
+        if (dispatcher != null) {
+            int maxRequests = Math.max(1, configuration.getMaxConcurrentRequests());
+
+            if (lanes != null) {
+                maxRequests = Math.max(maxRequests, lanes.getMaxConcurrentRequests());
+            }
+
+            // All calls go to a single host, so the per host limit is the same.
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequests);
+        }
     }
 
     /**
@@ -162,100 +452,144 @@ public class PdpClient implements Serializable {
      * @param client a mock HTTP client
      */
     public void setMockHttpClient(OkHttpClient client) {
-        this.client = client;
+        synchronized (this.reloadLock) {
+            State current = this.state;
+            LazyHttpClient mock = new LazyHttpClient(client);
+
+            this.state = new State(current.configuration, mock, mock, current.retryPolicy);
+        }
+    }
+
+    /**
+     * Sets the listener that receives the metrics of every evaluation, or null to stop reporting metrics.
+     *
+     * @param metricsListener the listener
+     */
+    public void setMetricsListener(PdpMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Sets the lanes through which calls are scheduled by priority class, or null to stop scheduling calls.
+     *
+     * @param priorityLanes the lanes, which may be shared with other clients
+     */
+    public void setPriorityLanes(PdpPriorityLanes priorityLanes) {
+        synchronized (this.reloadLock) {
+            this.priorityLanes = priorityLanes;
+
+            this.configureDispatcher(this.state.transport.getIfCreated(), this.state.configuration);
+        }
     }
 
     // Properties.
 
+    /**
+     * @return the HTTP client, which is created if no call was made yet.
+     */
+    OkHttpClient getHttpClient() {
+        return this.state.client.get();
+    }
+
+    public PdpPriorityLanes getPriorityLanes() {
+        return this.priorityLanes;
+    }
+
+    public PdpPriority getDefaultPriority() {
+        return this.defaultPriority;
+    }
+
+    /**
+     * @return the configuration snapshot currently used by this client.
+     */
+    public PdpClientConfiguration getConfiguration() {
+        return this.state.configuration;
+    }
+
     public int getPort() {
-        return  this.port;
+        return this.state.configuration.getPort();
     }
 
     public String getHostname() {
-        return this.hostname;
+        return this.state.configuration.getHostname();
     }
 
     public String getSchema() {
-        return this.schema;
+        return this.state.configuration.getSchema();
     }
 
     public String getPolicyPath() {
-        return this.policyPath;
+        return this.state.configuration.getPolicyPath();
     }
 
     public int getReadTimeoutMilliseconds() {
-        return this.readTimeoutMilliseconds;
+        return this.state.configuration.getReadTimeoutMilliseconds();
     }
 
     public int getConnectionTimeoutMilliseconds() {
-        return this.connectionTimeoutMilliseconds;
+        return this.state.configuration.getConnectionTimeoutMilliseconds();
     }
 
     public int getRetryMaxAttempts() {
-        return this.retryMaxAttempts;
+        return this.state.configuration.getRetryMaxAttempts();
     }
 
     public int getRetryBackoffMilliseconds() {
-        return this.retryBackoffMilliseconds;
+        return this.state.configuration.getRetryBackoffMilliseconds();
+    }
+
+    public int getMaxConcurrentRequests() {
+        return this.state.configuration.getMaxConcurrentRequests();
     }
 
     /**
-     * Loads configuration values from environment variables and recreates the HTTP client based on them.
+     * Loads configuration values from environment variables and atomically replaces the current configuration.
      */
     public void loadConfigurationFromEnvironment() {
-        Map<String, String> env = System.getenv();
-
-        String port = env.get(EnvPort);
-        if (port != null) {
-            try {
-                this.port = Integer.parseInt(port);
-            } catch (NumberFormatException exception) {
-            }
-        }
-
-        String hostname = env.get(EnvHostname);
-        if (hostname != null) {
-            this.hostname = hostname;
+        synchronized (this.reloadLock) {
+            this.applyConfiguration(this.state.configuration.withOverrides(System.getenv()));
         }
+    }
 
-        String policyPath = env.get(EnvPolicyPath);
-        if (policyPath != null) {
-            this.policyPath = policyPath;
-        }
+    /**
+     * Loads configuration values from a properties file and atomically replaces the current configuration.
+     *
+     * The file uses the same keys as the environment variables (e.g. PDP_PORT=8181). Keys missing from the file keep
+     * their current value.
+     *
+     * @param file the properties file to load.
+     * @throws IOException if the file can't be read.
+     */
+    public void loadConfigurationFromFile(Path file) throws IOException {
+        Properties properties = new Properties();
 
-        String readTimeoutMilliseconds = env.get(EnvReadTimeoutMilliseconds);
-        if (readTimeoutMilliseconds != null) {
-            try {
-                this.readTimeoutMilliseconds = Integer.parseInt(readTimeoutMilliseconds);
-            } catch (NumberFormatException exception) {
-            }
+        try (InputStream stream = Files.newInputStream(file)) {
+            properties.load(stream);
         }
 
-        String connectionTimeoutMilliseconds = env.get(EnvConnectionTimeoutMilliseconds);
-        if (connectionTimeoutMilliseconds != null) {
-            try {
-                this.connectionTimeoutMilliseconds = Integer.parseInt(connectionTimeoutMilliseconds);
-            } catch (NumberFormatException exception) {
-            }
+        Map<String, String> values = new HashMap<String, String>();
+        for (String name : properties.stringPropertyNames()) {
+            values.put(name, properties.getProperty(name));
         }
 
-        String retryMaxAttempts = env.get(EnvRetryMaxAttempts);
-        if (retryMaxAttempts != null) {
-            try {
-                this.retryMaxAttempts = Integer.parseInt(retryMaxAttempts);
-            } catch (NumberFormatException exception) {
-            }
+        synchronized (this.reloadLock) {
+            this.applyConfiguration(this.state.configuration.withOverrides(values));
         }
+    }
 
-        String retryBackoffMilliseconds = env.get(EnvRetryBackoffMilliseconds);
-        if (retryBackoffMilliseconds != null) {
-            try {
-                this.retryBackoffMilliseconds = Integer.parseInt(retryBackoffMilliseconds);
-            } catch (NumberFormatException exception) {
-            }
-        }
+    /**
+     * Loads the configuration from a properties file, and reloads it whenever the file changes.
+     *
+     * @see #loadConfigurationFromFile(Path)
+     *
+     * @param file the properties file to load and watch.
+     * @return the watcher, which should be closed to stop watching the file.
+     * @throws IOException if the file can't be read or watched.
+     */
+    public PdpConfigurationWatcher watchConfigurationFile(Path file) throws IOException {
+        this.loadConfigurationFromFile(file);
 
-        this.loadHttpClient();
+        return new PdpConfigurationWatcher(this, file);
     }
 
     /**
@@ -269,24 +603,25 @@ public class PdpClient implements Serializable {
      * @throws Throwable
      */
     public String getPdpEndpoint() throws Throwable {
-        String schema = this.schema, hostname = this.hostname, policyPath = this.policyPath;
-
-        String hostnameParts[] = this.hostname.split("://");
-
-        if (hostnameParts.length > 2) {
-            throw new MalformedURLException(String.format("Invalid schema/hostname: %s", this.hostname));
-        } else if (hostnameParts.length == 2) {
-            schema = hostnameParts[0];
-            hostname = hostnameParts[1];
-        }
+        return this.state.getPdpEndpoint();
+    }
 
-        if (!policyPath.startsWith("/")) {
-            policyPath = String.format("/%s", policyPath);
+    /**
+     * Holds the state of a single evaluation across its attempts.
+     */
+    private static final class Evaluation {
+        final Object requestObject;
+        final PdpPriority priority;
+        final PdpDeadline deadline;
+        final PdpEvaluationMetrics metrics = new PdpEvaluationMetrics();
+        final Object event = PdpFlightRecorder.beginEvaluation();
+        LazyHttpClient transport;
+
+        Evaluation(Object requestObject, PdpPriority priority, PdpDeadline deadline) {
+            this.requestObject = requestObject;
+            this.priority = priority;
+            this.deadline = deadline;
         }
-
-        URL url = new URL(schema, hostname, this.port, policyPath);
-
-        return url.toString();
     }
 
     /**
@@ -297,28 +632,368 @@ public class PdpClient implements Serializable {
      * @throws Throwable
      */
     public Response evaluateExecute(Object requestObject) throws Throwable {
-        byte[] json = this.mapper.writeValueAsBytes(requestObject);
+        return evaluateExecute(new Evaluation(requestObject, this.defaultPriority, PdpDeadline.current()));
+    }
+
+    private Response evaluateExecute(Evaluation evaluation) throws Throwable {
+        Response response = newCall(evaluation).execute();
+
+        evaluation.metrics.statusCode = response.code();
+
+        return response;
+    }
+
+    /**
+     * Serializes the request and prepares a call to the Policy Decision Point as per the current configuration.
+     *
+     * When the evaluation has a deadline, the call times out when it is reached, whatever the configured timeouts.
+     */
+    private Call newCall(Evaluation evaluation) throws Throwable {
+        State state = this.state;
+        PdpEvaluationMetrics metrics = evaluation.metrics;
+
+        // Created before reading the time left, so that the first call's timeout accounts for creating it.
+        OkHttpClient client = state.client.get();
+
+        long remainingNanos = 0;
+        if (evaluation.deadline != null) {
+            remainingNanos = evaluation.deadline.remainingNanos();
+
+            if (remainingNanos == 0) {
+                throw new PdpDeadlineExceededException("Deadline exceeded before calling the Policy Decision Point");
+            }
+        }
+
+        long encodeStart = System.nanoTime();
+        byte[] json = this.mapper.writeValueAsBytes(evaluation.requestObject);
+        metrics.encodeNanos += System.nanoTime() - encodeStart;
+        metrics.requestBytes = json.length;
+
         RequestBody body = RequestBody.create(json, JSON);
 
+        String endpoint = state.getPdpEndpoint();
+        metrics.endpoint = endpoint;
+        metrics.policyPath = state.configuration.getPolicyPath();
+
+        if (metrics.sampled) {
+            endpoint += state.configuration.getMetricsInstrument() ? "?metrics=true&instrument=true" : "?metrics=true";
+        }
+
         Request request = new Request.Builder()
-                .url(getPdpEndpoint())
+                .url(endpoint)
                 .post(body)
                 .build();
 
-        Response response = client.newCall(request).execute();
+        metrics.attempts++;
+        metrics.statusCode = 0;
 
-        return response;
+        Call call = client.newCall(request);
+        evaluation.transport = state.transport;
+
+        if (evaluation.deadline != null) {
+            call.timeout().timeout(remainingNanos, TimeUnit.NANOSECONDS);
+        }
+
+        return call;
+    }
+
+    /**
+     * Executes a single attempt of the request, and reads the whole response body so that failures while receiving it
+     * are retried too.
+     */
+    private byte[] evaluateAttempt(Evaluation evaluation) throws Throwable {
+        PdpEvaluationMetrics metrics = evaluation.metrics;
+        PdpPriorityLanes lanes = this.priorityLanes;
+
+        if (lanes != null) {
+            long queueStart = System.nanoTime();
+            lanes.acquireBlocking(evaluation.priority, evaluation.deadline);
+            metrics.queueNanos += System.nanoTime() - queueStart;
+        }
+
+        try {
+            Call call = newCall(evaluation);
+            long networkStart = System.nanoTime();
+
+            try (Response response = call.execute()) {
+                metrics.statusCode = response.code();
+
+                byte[] bytes = response.body().bytes();
+                metrics.responseBytes = bytes.length;
+
+                return bytes;
+            } finally {
+                metrics.networkNanos += System.nanoTime() - networkStart;
+                releaseConnection(evaluation);
+            }
+        } finally {
+            if (lanes != null) {
+                lanes.release(evaluation.priority);
+            }
+        }
     }
 
     /**
-     * Calls evaluateExecute with requestObject multiple times based on the retry policy, and returns the response.
+     * Waits for a slot in the priority lane of the evaluation without blocking, until its deadline, then enqueues a
+     * single attempt of the request.
+     */
+    private CompletableFuture<byte[]> evaluateAttemptAsync(Evaluation evaluation) throws Throwable {
+        PdpPriorityLanes lanes = this.priorityLanes;
+
+        if (lanes == null) {
+            return enqueueAttempt(evaluation);
+        }
+
+        long queueStart = System.nanoTime();
+
+        return lanes.acquireAsync(evaluation.priority, evaluation.deadline)
+                .thenCompose(granted -> {
+                    evaluation.metrics.queueNanos += System.nanoTime() - queueStart;
+
+                    CompletableFuture<byte[]> attempt;
+                    try {
+                        attempt = enqueueAttempt(evaluation);
+                    } catch (Throwable throwable) {
+                        attempt = new CompletableFuture<byte[]>();
+                        attempt.completeExceptionally(throwable);
+                    }
+
+                    // Only a granted slot is released, not one whose deadline was reached while queued.
+                    return attempt.whenComplete((bytes, failure) -> lanes.release(evaluation.priority));
+                });
+    }
+
+    /**
+     * Enqueues a single attempt of the request, and completes once the whole response body was received.
+     */
+    private CompletableFuture<byte[]> enqueueAttempt(Evaluation evaluation) throws Throwable {
+        PdpEvaluationMetrics metrics = evaluation.metrics;
+        CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        Call call = newCall(evaluation);
+        long networkStart = System.nanoTime();
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException exception) {
+                metrics.networkNanos += System.nanoTime() - networkStart;
+                releaseConnection(evaluation);
+
+                future.completeExceptionally(exception);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closeable = response) {
+                    metrics.statusCode = response.code();
+
+                    byte[] bytes = response.body().bytes();
+                    metrics.responseBytes = bytes.length;
+
+                    future.complete(bytes);
+                } catch (IOException exception) {
+                    future.completeExceptionally(exception);
+                } finally {
+                    metrics.networkNanos += System.nanoTime() - networkStart;
+                    releaseConnection(evaluation);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    private static void sample(State state, PdpEvaluationMetrics metrics) {
+        double sampleRate = state.configuration.getMetricsSampleRate();
+
+        metrics.sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Returns the retry policy for an evaluation. Evaluations without a deadline share the configured policy.
      *
-     * @param requestObject the request to make to the Policy Decision Point
-     * @return the response from the Policy Decision Point
+     * Evaluations with a deadline use a policy that keeps retries within it: the backoff before a retry is shortened
+     * to leave room for one more attempt before the deadline, and retries are abandoned once the time left is shorter
+     * than the average attempt so far.
+     */
+    private static RetryPolicy<Object> retryPolicy(State state, Evaluation evaluation) {
+        if (evaluation.deadline == null) {
+            return state.retryPolicy;
+        }
+
+        PdpClientConfiguration configuration = state.configuration;
+        PdpDeadline deadline = evaluation.deadline;
+        PdpEvaluationMetrics metrics = evaluation.metrics;
+
+        return new RetryPolicy<>()
+                .handle(IOException.class)
+                .withMaxAttempts(configuration.getRetryMaxAttempts())
+                .abortIf((result, failure) -> deadline.remainingNanos() <= averageAttemptNanos(metrics))
+                .withDelay((result, failure, context) -> {
+                    long budgetNanos = deadline.remainingNanos() - averageAttemptNanos(metrics);
+
+                    return Duration.ofNanos(Math.max(0, Math.min(backoffNanos(configuration, metrics.attempts), budgetNanos)));
+                })
+                .onRetry(attempted -> PdpFlightRecorder.commitRetry(configuration, attempted));
+    }
+
+    private static long averageAttemptNanos(PdpEvaluationMetrics metrics) {
+        return metrics.attempts > 0 ? (metrics.encodeNanos + metrics.networkNanos) / metrics.attempts : 0;
+    }
+
+    /**
+     * @return the backoff before the next attempt, as computed by the configured retry policy.
+     */
+    private static long backoffNanos(PdpClientConfiguration configuration, int attempts) {
+        long delay = configuration.getRetryBackoffMilliseconds();
+        long maxDelay = (configuration.getRetryBackoffMilliseconds()*configuration.getRetryMaxAttempts())+1;
+
+        for (int attempt = 1; attempt < attempts && delay < maxDelay; attempt++) {
+            delay *= 2;
+        }
+
+        return TimeUnit.MILLISECONDS.toNanos(Math.min(delay, maxDelay));
+    }
+
+    /**
+     * Calls evaluateExecute with requestObject multiple times based on the retry policy, and returns the response body.
+     *
+     * @param evaluation the evaluation, whose metrics are updated on every attempt
+     * @return the response body from the Policy Decision Point
      * @throws Throwable
      */
-    private Response evaluate(Object requestObject) throws Throwable {
-        return Failsafe.with(this.retryPolicy).get(() -> evaluateExecute(requestObject));
+    private byte[] evaluate(Evaluation evaluation) throws Throwable {
+        State state = this.state;
+        sample(state, evaluation.metrics);
+
+        return Failsafe.with(retryPolicy(state, evaluation)).get(() -> evaluateAttempt(evaluation));
+    }
+
+    /**
+     * Asynchronously calls the Policy Decision Point multiple times based on the retry policy. No thread is blocked
+     * while waiting for the response or between attempts.
+     *
+     * @param evaluation the evaluation, whose metrics are updated on every attempt
+     * @return a future of the response body from the Policy Decision Point
+     */
+    private CompletableFuture<byte[]> evaluateAsync(Evaluation evaluation) {
+        State state = this.state;
+        sample(state, evaluation.metrics);
+
+        return Failsafe.with(retryPolicy(state, evaluation)).getStageAsync(() -> evaluateAttemptAsync(evaluation));
+    }
+
+    /**
+     * Stores the server-side metrics of a sampled evaluation.
+     *
+     * @param metrics the metrics of the evaluation
+     * @param serverMetrics the "metrics" object of the response, or null if there is none
+     */
+    private static void readServerMetrics(PdpEvaluationMetrics metrics, JsonNode serverMetrics) {
+        if (serverMetrics != null && serverMetrics.isObject()) {
+            Map<String, Long> values = new HashMap<String, Long>();
+
+            Iterator<Map.Entry<String, JsonNode>> fields = serverMetrics.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+
+                if (field.getValue().isNumber()) {
+                    values.put(field.getKey(), field.getValue().asLong());
+                }
+            }
+
+            metrics.serverMetrics = values;
+        }
+    }
+
+    /**
+     * Hands the metrics of a successful or failed evaluation to the listener, and commits its Flight Recorder event.
+     *
+     * @param evaluation the evaluation
+     * @param failure the failure of the evaluation, or null if it succeeded
+     */
+    private void complete(Evaluation evaluation, Throwable failure) {
+        PdpEvaluationMetrics metrics = evaluation.metrics;
+        metrics.failure = unwrap(failure);
+
+        PdpFlightRecorder.commitEvaluation(evaluation.event, metrics, evaluation.priority);
+
+        PdpMetricsListener listener = this.metricsListener;
+        if (listener != null) {
+            try {
+                listener.onEvaluation(metrics);
+            } catch (RuntimeException exception) {
+                // A broken listener must not fail the authorization decision.
+            }
+        }
+    }
+
+    /**
+     * @return the exception that caused a failure, without the wrappers added by Failsafe and futures.
+     */
+    private static Throwable unwrap(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException
+                || failure instanceof FailsafeException) && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+
+        return failure;
+    }
+
+    private JsonNode readJsonResponse(Object requestObject, PdpPriority priority, PdpDeadline deadline) throws Throwable {
+        Evaluation evaluation = new Evaluation(requestObject, priority != null ? priority : this.defaultPriority, PdpDeadline.effective(deadline));
+
+        try {
+            JsonNode node = decodeJsonResponse(evaluate(evaluation), evaluation.metrics);
+            complete(evaluation, null);
+
+            return node;
+        } catch (Throwable throwable) {
+            complete(evaluation, throwable);
+            throw throwable;
+        }
+    }
+
+    private CompletableFuture<JsonNode> readJsonResponseAsync(Object requestObject, PdpPriority priority, PdpDeadline deadline) {
+        Evaluation evaluation = new Evaluation(requestObject, priority != null ? priority : this.defaultPriority, PdpDeadline.effective(deadline));
+
+        return evaluateAsync(evaluation).thenApply(bytes -> {
+            try {
+                return decodeJsonResponse(bytes, evaluation.metrics);
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }).whenComplete((node, failure) -> complete(evaluation, failure));
+    }
+
+    private JsonNode decodeJsonResponse(byte[] bytes, PdpEvaluationMetrics metrics) throws IOException {
+        long decodeStart = System.nanoTime();
+        JsonNode node = this.mapper.readTree(bytes);
+        metrics.decodeNanos = System.nanoTime() - decodeStart;
+
+        readServerMetrics(metrics, metrics.sampled ? node.get("metrics") : null);
+
+        return node;
+    }
+
+    private Map<String, Object> readMappedResponse(Object requestObject, PdpPriority priority, PdpDeadline deadline) throws Throwable {
+        Evaluation evaluation = new Evaluation(requestObject, priority != null ? priority : this.defaultPriority, PdpDeadline.effective(deadline));
+        PdpEvaluationMetrics metrics = evaluation.metrics;
+
+        try {
+            byte[] bytes = evaluate(evaluation);
+
+            long decodeStart = System.nanoTime();
+            Map<String, Object> map = this.mapper.readValue(bytes, new TypeReference<Map<String, Object>>() {});
+            metrics.decodeNanos = System.nanoTime() - decodeStart;
+
+            readServerMetrics(metrics, metrics.sampled ? this.mapper.valueToTree(map.get("metrics")) : null);
+            complete(evaluation, null);
+
+            return map;
+        } catch (Throwable throwable) {
+            complete(evaluation, throwable);
+            throw throwable;
+        }
     }
 
     /**
@@ -330,9 +1005,7 @@ public class PdpClient implements Serializable {
      * @throws Throwable
      */
     public JsonNode getJsonResponse(Map<String, Object> input) throws Throwable {
-        Response response = evaluate(input);
-
-        return this.mapper.readTree(response.body().bytes());
+        return readJsonResponse(input, null, null);
     }
 
     /**
@@ -344,9 +1017,29 @@ public class PdpClient implements Serializable {
      * @throws Throwable
      */
     public JsonNode getJsonResponse(PdpRequest request) throws  Throwable {
-        Response response = evaluate(request);
+        return readJsonResponse(request, null, null);
+    }
 
-        return this.mapper.readTree(response.body().bytes());
+    /**
+     * Asynchronously returns the JSON object response from the Policy Decision Point, after making the request as per
+     * the defined configuration values. The calling thread is not blocked during the call or between retries.
+     *
+     * @param input a Java native input object that is serialized for making the request to the Policy Decision Point.
+     * @return a future of the JSON object response from the Policy Decision Point.
+     */
+    public CompletableFuture<JsonNode> getJsonResponseAsync(Map<String, Object> input) {
+        return readJsonResponseAsync(input, null, null);
+    }
+
+    /**
+     * Asynchronously returns the JSON object response from the Policy Decision Point, after making the request as per
+     * the defined configuration values. The calling thread is not blocked during the call or between retries.
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @return a future of the JSON object response from the Policy Decision Point.
+     */
+    public CompletableFuture<JsonNode> getJsonResponseAsync(PdpRequest request) {
+        return readJsonResponseAsync(request, null, null);
     }
 
     /**
@@ -358,9 +1051,7 @@ public class PdpClient implements Serializable {
      * @throws Throwable
      */
     public Map<String, Object> getMappedResponse(Map<String, Object> input) throws Throwable {
-        Response response = evaluate(input);
-
-        return this.mapper.readValue(response.body().bytes(), new TypeReference<Map<String, Object>>() {});
+        return readMappedResponse(input, null, null);
     }
 
     /**
@@ -372,8 +1063,216 @@ public class PdpClient implements Serializable {
      * @throws Throwable
      */
     public Map<String, Object> getMappedResponse(PdpRequest request) throws Throwable {
-        Response response = evaluate(request);
+        return readMappedResponse(request, null, null);
+    }
 
-        return this.mapper.readValue(response.body().bytes(), new TypeReference<Map<String, Object>>() {});
+    /**
+     * Returns the JSON object response from the Policy Decision Point, failing once the deadline is reached.
+     *
+     * The deadline bounds the whole evaluation including retries, which are skipped when the time left can't fit
+     * another attempt. A deadline attached to the current thread with PdpDeadline.attach applies too, if it is earlier.
+     *
+     * @param input a Java native input object that is serialized for making the request to the Policy Decision Point.
+     * @param deadline the maximum time the evaluation may take.
+     * @return the JSON object response from the Policy Decision Point.
+     * @throws Throwable
+     */
+    public JsonNode getJsonResponse(Map<String, Object> input, Duration deadline) throws Throwable {
+        return readJsonResponse(input, null, PdpDeadline.after(deadline));
+    }
+
+    /**
+     * Returns the JSON object response from the Policy Decision Point, failing once the deadline is reached.
+     *
+     * @see #getJsonResponse(Map, Duration)
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @param deadline the maximum time the evaluation may take.
+     * @return the JSON object response from the Policy Decision Point.
+     * @throws Throwable
+     */
+    public JsonNode getJsonResponse(PdpRequest request, Duration deadline) throws Throwable {
+        return readJsonResponse(request, null, PdpDeadline.after(deadline));
+    }
+
+    /**
+     * Asynchronously returns the JSON object response from the Policy Decision Point, failing once the deadline is
+     * reached.
+     *
+     * @see #getJsonResponse(Map, Duration)
+     *
+     * @param input a Java native input object that is serialized for making the request to the Policy Decision Point.
+     * @param deadline the maximum time the evaluation may take.
+     * @return a future of the JSON object response from the Policy Decision Point.
+     */
+    public CompletableFuture<JsonNode> getJsonResponseAsync(Map<String, Object> input, Duration deadline) {
+        return readJsonResponseAsync(input, null, PdpDeadline.after(deadline));
+    }
+
+    /**
+     * Asynchronously returns the JSON object response from the Policy Decision Point, failing once the deadline is
+     * reached.
+     *
+     * @see #getJsonResponse(Map, Duration)
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @param deadline the maximum time the evaluation may take.
+     * @return a future of the JSON object response from the Policy Decision Point.
+     */
+    public CompletableFuture<JsonNode> getJsonResponseAsync(PdpRequest request, Duration deadline) {
+        return readJsonResponseAsync(request, null, PdpDeadline.after(deadline));
+    }
+
+    /**
+     * Returns the response body from the Policy Decision Point deserialized as a Map, failing once the deadline is
+     * reached.
+     *
+     * @see #getJsonResponse(Map, Duration)
+     *
+     * @param input a Java native input object that is serialized for making the request to the Policy Decision Point.
+     * @param deadline the maximum time the evaluation may take.
+     * @return the Map representation of the response from the Policy Decision Point.
+     * @throws Throwable
+     */
+    public Map<String, Object> getMappedResponse(Map<String, Object> input, Duration deadline) throws Throwable {
+        return readMappedResponse(input, null, PdpDeadline.after(deadline));
+    }
+
+    /**
+     * Returns the response body from the Policy Decision Point deserialized as a Map, failing once the deadline is
+     * reached.
+     *
+     * @see #getJsonResponse(Map, Duration)
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @param deadline the maximum time the evaluation may take.
+     * @return the Map representation of the response from the Policy Decision Point.
+     * @throws Throwable
+     */
+    public Map<String, Object> getMappedResponse(PdpRequest request, Duration deadline) throws Throwable {
+        return readMappedResponse(request, null, PdpDeadline.after(deadline));
+    }
+
+    /**
+     * Returns the JSON object response from the Policy Decision Point, scheduling the call with the given priority.
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @param priority the priority class of the call.
+     * @return the JSON object response from the Policy Decision Point.
+     * @throws Throwable
+     */
+    public JsonNode getJsonResponse(PdpRequest request, PdpPriority priority) throws Throwable {
+        return readJsonResponse(request, priority, null);
+    }
+
+    /**
+     * Returns the JSON object response from the Policy Decision Point, scheduling the call with the given priority and
+     * failing once the deadline is reached. The deadline includes the time spent waiting in the priority lane.
+     *
+     * @see #getJsonResponse(Map, Duration)
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @param priority the priority class of the call.
+     * @param deadline the maximum time the evaluation may take.
+     * @return the JSON object response from the Policy Decision Point.
+     * @throws Throwable
+     */
+    public JsonNode getJsonResponse(PdpRequest request, PdpPriority priority, Duration deadline) throws Throwable {
+        return readJsonResponse(request, priority, PdpDeadline.after(deadline));
+    }
+
+    /**
+     * Asynchronously returns the JSON object response from the Policy Decision Point, scheduling the call with the
+     * given priority.
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @param priority the priority class of the call.
+     * @return a future of the JSON object response from the Policy Decision Point.
+     */
+    public CompletableFuture<JsonNode> getJsonResponseAsync(PdpRequest request, PdpPriority priority) {
+        return readJsonResponseAsync(request, priority, null);
+    }
+
+    /**
+     * Returns the response body from the Policy Decision Point deserialized as a Map, scheduling the call with the
+     * given priority.
+     *
+     * @param request a PdpRequest object that is serialized for making the request to the Policy Decision Point.
+     * @param priority the priority class of the call.
+     * @return the Map representation of the response from the Policy Decision Point.
+     * @throws Throwable
+     */
+    public Map<String, Object> getMappedResponse(PdpRequest request, PdpPriority priority) throws Throwable {
+        return readMappedResponse(request, priority, null);
+    }
+
+    /**
+     * Evaluates every request read from the given iterator and returns a lazy stream of the results.
+     *
+     * Requests are read from the iterator only as results are consumed from the returned stream, and at most
+     * maxInFlight requests are evaluated concurrently, so a slow Policy Decision Point slows the consumer down instead
+     * of buffering requests in memory. Failed evaluations are reported as results rather than ending the stream.
+     *
+     * The requests are evaluated asynchronously, so the stream holds no thread of its own. It should still be closed if
+     * it is not fully consumed, to stop reading from the source.
+     *
+     * @param requests the requests to evaluate.
+     * @param maxInFlight the maximum number of concurrent requests to the Policy Decision Point.
+     * @param ordered whether results are emitted in the order of the requests, or as soon as they complete.
+     * @return a stream of results, one per request.
+     */
+    public Stream<PdpBulkResult> getJsonResponses(Iterator<PdpRequest> requests, int maxInFlight, boolean ordered) {
+        return this.getJsonResponses(requests, maxInFlight, ordered, this.defaultPriority);
+    }
+
+    /**
+     * Evaluates every request read from the given iterator with the given priority, and returns a lazy stream of the
+     * results.
+     *
+     * @see #getJsonResponses(Iterator, int, boolean)
+     *
+     * @param requests the requests to evaluate.
+     * @param maxInFlight the maximum number of concurrent requests to the Policy Decision Point.
+     * @param ordered whether results are emitted in the order of the requests, or as soon as they complete.
+     * @param priority the priority class of the calls, typically BACKGROUND for batch jobs.
+     * @return a stream of results, one per request.
+     */
+    public Stream<PdpBulkResult> getJsonResponses(Iterator<PdpRequest> requests, int maxInFlight, boolean ordered, PdpPriority priority) {
+        PdpBulkIterator iterator = new PdpBulkIterator(this, requests, maxInFlight, ordered, priority);
+
+        int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Evaluates every request in the given stream and returns a lazy stream of the results.
+     *
+     * @see #getJsonResponses(Iterator, int, boolean)
+     *
+     * @param requests the requests to evaluate.
+     * @param maxInFlight the maximum number of concurrent requests to the Policy Decision Point.
+     * @param ordered whether results are emitted in the order of the requests, or as soon as they complete.
+     * @return a stream of results, one per request.
+     */
+    public Stream<PdpBulkResult> getJsonResponses(Stream<PdpRequest> requests, int maxInFlight, boolean ordered) {
+        return this.getJsonResponses(requests, maxInFlight, ordered, this.defaultPriority);
+    }
+
+    /**
+     * Evaluates every request in the given stream with the given priority, and returns a lazy stream of the results.
+     *
+     * @see #getJsonResponses(Iterator, int, boolean)
+     *
+     * @param requests the requests to evaluate.
+     * @param maxInFlight the maximum number of concurrent requests to the Policy Decision Point.
+     * @param ordered whether results are emitted in the order of the requests, or as soon as they complete.
+     * @param priority the priority class of the calls, typically BACKGROUND for batch jobs.
+     * @return a stream of results, one per request.
+     */
+    public Stream<PdpBulkResult> getJsonResponses(Stream<PdpRequest> requests, int maxInFlight, boolean ordered, PdpPriority priority) {
+        return this.getJsonResponses(requests.iterator(), maxInFlight, ordered, priority)
+                .onClose(requests::close);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,213 @@
+package security.build.pdp.client;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Holds an immutable snapshot of the configuration values of a PdpClient.
+ *
+ * A PdpClient swaps its whole configuration at once when it is reloaded, so a call in progress always sees a
+ * consistent set of values.
+ */
+public final class PdpClientConfiguration {
+    private final int port;
+    private final String hostname;
+    private final String schema;
+    private final String policyPath;
+    private final int readTimeoutMilliseconds;
+    private final int connectionTimeoutMilliseconds;
+    private final int retryMaxAttempts;
+    private final int retryBackoffMilliseconds;
+    private final double metricsSampleRate;
+    private final boolean metricsInstrument;
+    private final int maxConcurrentRequests;
+
+    PdpClientConfiguration(int port, String hostname, String schema, String policyPath, int readTimeoutMilliseconds,
+                           int connectionTimeoutMilliseconds, int retryMaxAttempts, int retryBackoffMilliseconds,
+                           double metricsSampleRate, boolean metricsInstrument, int maxConcurrentRequests) {
+        this.port = port;
+        this.hostname = hostname;
+        this.schema = schema;
+        this.policyPath = policyPath;
+        this.readTimeoutMilliseconds = readTimeoutMilliseconds;
+        this.connectionTimeoutMilliseconds = connectionTimeoutMilliseconds;
+        this.retryMaxAttempts = retryMaxAttempts;
+        this.retryBackoffMilliseconds = retryBackoffMilliseconds;
+        this.metricsSampleRate = metricsSampleRate;
+        this.metricsInstrument = metricsInstrument;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return a configuration with the default values of PdpClient.
+     */
+    static PdpClientConfiguration defaults() {
+        return new PdpClientConfiguration(
+                PdpClient.DefaultPort,
+                PdpClient.DefaultHostname,
+                PdpClient.DefaultSchema,
+                PdpClient.DefaultPolicyPath,
+                PdpClient.DefaultReadTimeoutMilliseconds,
+                PdpClient.DefaultConnectionTimeoutMilliseconds,
+                PdpClient.DefaultRetryMaxAttempts,
+                PdpClient.DefaultRetryBackoffMilliseconds,
+                PdpClient.DefaultMetricsSampleRate,
+                PdpClient.DefaultMetricsInstrument,
+                PdpClient.DefaultMaxConcurrentRequests);
+    }
+
+    /**
+     * Returns a copy of this configuration, with the values present in the given map replacing the current ones.
+     *
+     * The map is keyed by the environment variable names defined in PdpClient (e.g. PDP_PORT). Missing keys and
+     * values that can't be parsed keep their current value.
+     *
+     * @param values configuration values keyed by environment variable name.
+     * @return the new configuration.
+     */
+    PdpClientConfiguration withOverrides(Map<String, String> values) {
+        return new PdpClientConfiguration(
+                parseInt(values.get(PdpClient.EnvPort), this.port),
+                parseString(values.get(PdpClient.EnvHostname), this.hostname),
+                this.schema,
+                parseString(values.get(PdpClient.EnvPolicyPath), this.policyPath),
+                parseInt(values.get(PdpClient.EnvReadTimeoutMilliseconds), this.readTimeoutMilliseconds),
+                parseInt(values.get(PdpClient.EnvConnectionTimeoutMilliseconds), this.connectionTimeoutMilliseconds),
+                parseInt(values.get(PdpClient.EnvRetryMaxAttempts), this.retryMaxAttempts),
+                parseInt(values.get(PdpClient.EnvRetryBackoffMilliseconds), this.retryBackoffMilliseconds),
+                parseDouble(values.get(PdpClient.EnvMetricsSampleRate), this.metricsSampleRate),
+                parseBoolean(values.get(PdpClient.EnvMetricsInstrument), this.metricsInstrument),
+                parseInt(values.get(PdpClient.EnvMaxConcurrentRequests), this.maxConcurrentRequests));
+    }
+
+    private static int parseInt(String value, int current) {
+        if (value == null) {
+            return current;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException exception) {
+            return current;
+        }
+    }
+
+    private static double parseDouble(String value, double current) {
+        if (value == null) {
+            return current;
+        }
+
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException exception) {
+            return current;
+        }
+    }
+
+    private static boolean parseBoolean(String value, boolean current) {
+        return value != null ? Boolean.parseBoolean(value.trim()) : current;
+    }
+
+    private static String parseString(String value, String current) {
+        return value != null ? value.trim() : current;
+    }
+
+    /**
+     * Returns whether connections made with this configuration can be reused with the other configuration, i.e.
+     * whether both point at the same Policy Decision Point.
+     *
+     * @param other the configuration to compare with.
+     * @return true if both configurations share the same schema, hostname and port.
+     */
+    boolean hasSameTransport(PdpClientConfiguration other) {
+        return this.port == other.port
+                && Objects.equals(this.hostname, other.hostname)
+                && Objects.equals(this.schema, other.schema);
+    }
+
+    /**
+     * Returns a URL to the Policy Decision Point by constructing it as per configuration values.
+     *
+     * Handles expected configuration values:
+     * - hostname can include the schema, or default to HTTP
+     * - policyPath may or may not have a leading /
+     *
+     * @return a URL to the Policy Decision Point
+     * @throws MalformedURLException if the hostname or schema are invalid
+     */
+    String getPdpEndpoint() throws MalformedURLException {
+        String schema = this.schema, hostname = this.hostname, policyPath = this.policyPath;
+
+        String hostnameParts[] = this.hostname.split("://");
+
+        if (hostnameParts.length > 2) {
+            throw new MalformedURLException(String.format("Invalid schema/hostname: %s", this.hostname));
+        } else if (hostnameParts.length == 2) {
+            schema = hostnameParts[0];
+            hostname = hostnameParts[1];
+        }
+
+        if (!policyPath.startsWith("/")) {
+            policyPath = String.format("/%s", policyPath);
+        }
+
+        URL url = new URL(schema, hostname, this.port, policyPath);
+
+        return url.toString();
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    public String getHostname() {
+        return this.hostname;
+    }
+
+    public String getSchema() {
+        return this.schema;
+    }
+
+    public String getPolicyPath() {
+        return this.policyPath;
+    }
+
+    public int getReadTimeoutMilliseconds() {
+        return this.readTimeoutMilliseconds;
+    }
+
+    public int getConnectionTimeoutMilliseconds() {
+        return this.connectionTimeoutMilliseconds;
+    }
+
+    public int getRetryMaxAttempts() {
+        return this.retryMaxAttempts;
+    }
+
+    public int getRetryBackoffMilliseconds() {
+        return this.retryBackoffMilliseconds;
+    }
+
+    /**
+     * @return the fraction of evaluations, between 0 and 1, for which server-side metrics are requested.
+     */
+    public double getMetricsSampleRate() {
+        return this.metricsSampleRate;
+    }
+
+    /**
+     * @return whether sampled evaluations also request the detailed instrumentation metrics.
+     */
+    public boolean getMetricsInstrument() {
+        return this.metricsInstrument;
+    }
+
+    /**
+     * @return the maximum number of asynchronous calls run at once, before further calls wait in the dispatcher.
+     */
+    public int getMaxConcurrentRequests() {
+        return this.maxConcurrentRequests;
+    }
+}
@@ -0,0 +1,124 @@
+package security.build.pdp.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a configuration file and reloads the configuration of a PdpClient whenever the file changes.
+ *
+ * The file is read with PdpClient.loadConfigurationFromFile, so it uses the same keys as the environment variables
+ * (e.g. PDP_PORT=8181). The file is only read once it stopped changing for a quiet period, so that a file being
+ * written in several steps isn't applied half-written, e.g. with a truncated hostname. Writers that can't finish
+ * within the quiet period should write a temporary file in the same directory and atomically move it into place.
+ * Files that can't be read are skipped until the next change.
+ */
+public class PdpConfigurationWatcher implements Closeable {
+
+    public static long DefaultQuietPeriodMilliseconds = 250;
+
+    private final PdpClient client;
+    private final Path file;
+    private final long quietPeriodNanos;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    PdpConfigurationWatcher(PdpClient client, Path file) throws IOException {
+        this(client, file, DefaultQuietPeriodMilliseconds);
+    }
+
+    PdpConfigurationWatcher(PdpClient client, Path file, long quietPeriodMilliseconds) throws IOException {
+        this.client = client;
+        this.file = file.toAbsolutePath();
+        this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriodMilliseconds);
+
+        Path directory = this.file.getParent();
+
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(this.watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        this.thread = new Thread(this::watch, String.format("pdp-config-watcher-%s", this.file.getFileName()));
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void watch() {
+        boolean pending = false;
+        long loadAt = 0;
+
+        while (true) {
+            WatchKey key;
+
+            try {
+                if (pending) {
+                    long waitNanos = loadAt - System.nanoTime();
+                    key = waitNanos > 0 ? this.watchService.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+
+                    if (key == null) {
+                        // The file didn't change for the whole quiet period.
+                        pending = false;
+                        this.load();
+
+                        continue;
+                    }
+                } else {
+                    key = this.watchService.take();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException exception) {
+                return;
+            }
+
+            if (this.changed(key)) {
+                // Every change of the file restarts the quiet period.
+                pending = true;
+                loadAt = System.nanoTime() + this.quietPeriodNanos;
+            }
+
+            if (!key.reset()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return whether the events of the key include a change of the watched file.
+     */
+    private boolean changed(WatchKey key) {
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && this.file.getFileName().equals(context))) {
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private void load() {
+        try {
+            this.client.loadConfigurationFromFile(this.file);
+        } catch (IOException exception) {
+            // Keep the current configuration until the file can be read.
+        }
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    /**
+     * Stops watching the configuration file. The current configuration of the client is kept.
+     */
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+        this.thread.interrupt();
+    }
+}
@@ -0,0 +1,115 @@
+package security.build.pdp.client;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which an evaluation must complete.
+ *
+ * A deadline can be passed explicitly to a PdpClient call, or attached to the current thread so that every call made
+ * within its scope inherits it, e.g. from the request budget of an incoming request:
+ *
+ * <pre>
+ * try (PdpDeadline.Scope scope = PdpDeadline.after(Duration.ofMillis(200)).attach()) {
+ *     client.getJsonResponse(request);
+ * }
+ * </pre>
+ */
+public final class PdpDeadline {
+
+    private static final ThreadLocal<PdpDeadline> current = new ThreadLocal<PdpDeadline>();
+
+    private final long deadlineNanos;
+
+    private PdpDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param timeout the time left from now.
+     * @return a deadline the given time from now.
+     */
+    public static PdpDeadline after(Duration timeout) {
+        return new PdpDeadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * @return the deadline attached to the current thread, or null if there is none.
+     */
+    public static PdpDeadline current() {
+        return current.get();
+    }
+
+    /**
+     * Returns the earliest of the given deadline and the deadline attached to the current thread, so that an explicit
+     * deadline can shorten an inherited one, but never extend it.
+     *
+     * @param deadline an explicit deadline, or null.
+     * @return the effective deadline, or null if there is none.
+     */
+    static PdpDeadline effective(PdpDeadline deadline) {
+        PdpDeadline inherited = current.get();
+
+        if (deadline == null) {
+            return inherited;
+        } else if (inherited == null) {
+            return deadline;
+        }
+
+        return deadline.deadlineNanos - inherited.deadlineNanos <= 0 ? deadline : inherited;
+    }
+
+    /**
+     * @return the time left until the deadline in nanoseconds, or 0 if it has passed.
+     */
+    public long remainingNanos() {
+        return Math.max(0, this.deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * @return the time left until the deadline, or zero if it has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(this.remainingNanos());
+    }
+
+    public long remaining(TimeUnit unit) {
+        return unit.convert(this.remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return this.remainingNanos() == 0;
+    }
+
+    /**
+     * Attaches this deadline to the current thread until the returned scope is closed.
+     *
+     * @return the scope, which restores the previously attached deadline when closed.
+     */
+    public Scope attach() {
+        PdpDeadline previous = current.get();
+        current.set(this);
+
+        return new Scope(previous);
+    }
+
+    /**
+     * The scope in which a deadline is attached to a thread.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final PdpDeadline previous;
+
+        private Scope(PdpDeadline previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (this.previous == null) {
+                current.remove();
+            } else {
+                current.set(this.previous);
+            }
+        }
+    }
+}
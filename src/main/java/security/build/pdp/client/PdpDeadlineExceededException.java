@@ -0,0 +1,13 @@
+package security.build.pdp.client;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when the deadline of an evaluation passes before a response is received from the Policy Decision Point.
+ */
+public class PdpDeadlineExceededException extends InterruptedIOException {
+
+    public PdpDeadlineExceededException(String message) {
+        super(message);
+    }
+}
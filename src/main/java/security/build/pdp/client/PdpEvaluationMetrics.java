@@ -0,0 +1,133 @@
+package security.build.pdp.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Holds the client-side timings of a single evaluation, and the server-side metrics reported by the Policy Decision
+ * Point when the evaluation was sampled.
+ *
+ * Comparing the client-side network time with the server-side timers tells apart time spent on the network from time
+ * spent evaluating the policy.
+ */
+public class PdpEvaluationMetrics {
+    public static final String ServerMetricQueryEval = "timer_rego_query_eval_ns";
+    public static final String ServerMetricServerHandler = "timer_server_handler_ns";
+
+    String endpoint;
+    String policyPath;
+    boolean sampled;
+    int attempts;
+    int statusCode;
+    long requestBytes;
+    long responseBytes;
+    long queueNanos;
+    long encodeNanos;
+    long networkNanos;
+    long decodeNanos;
+    Map<String, Long> serverMetrics = Collections.emptyMap();
+    Throwable failure;
+
+    PdpEvaluationMetrics() {
+    }
+
+    /**
+     * @return the URL the last attempt was sent to, without the metrics query parameters.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getPolicyPath() {
+        return policyPath;
+    }
+
+    /**
+     * @return whether server-side metrics were requested from the Policy Decision Point for this evaluation.
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the HTTP status code of the last attempt, or 0 if no response was received.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return the time spent waiting for a slot in a priority lane, across all attempts, in nanoseconds.
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * @return the time spent serializing the request, in nanoseconds.
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    /**
+     * @return the time spent sending requests and receiving response bodies, across all attempts, in nanoseconds.
+     */
+    public long getNetworkNanos() {
+        return networkNanos;
+    }
+
+    /**
+     * @return the time spent deserializing the response, in nanoseconds.
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * @return the exception that failed the evaluation, e.g. a timeout once the retries were exhausted, or null if it
+     * succeeded.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the metrics reported by the Policy Decision Point, e.g. timer_rego_query_eval_ns.
+     *
+     * @return the server-side metrics by name, or an empty map if the evaluation was not sampled.
+     */
+    public Map<String, Long> getServerMetrics() {
+        return serverMetrics;
+    }
+
+    /**
+     * @return the time the Policy Decision Point spent evaluating the query, in nanoseconds, or -1 if unknown.
+     */
+    public long getServerQueryEvalNanos() {
+        Long value = serverMetrics.get(ServerMetricQueryEval);
+
+        return value != null ? value : -1;
+    }
+
+    /**
+     * @return the time the Policy Decision Point spent handling the request, in nanoseconds, or -1 if unknown.
+     */
+    public long getServerHandlerNanos() {
+        Long value = serverMetrics.get(ServerMetricServerHandler);
+
+        return value != null ? value : -1;
+    }
+}
@@ -0,0 +1,89 @@
+package security.build.pdp.client;
+
+import net.jodah.failsafe.event.ExecutionAttemptedEvent;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Emits the Flight Recorder events of PdpClient.
+ *
+ * The events are registered on the first evaluation, and pick up the settings of recordings that enable them by name
+ * (e.g. -XX:StartFlightRecording:+security.build.pdp.Evaluation#enabled=true). Nothing is allocated unless a
+ * recording has them enabled.
+ *
+ * The events themselves are compiled for Java 11 from src/main/java11 and loaded by name, since this class is compiled
+ * for Java 8. On Java 8, and on runtimes without Flight Recorder, no events are emitted.
+ */
+final class PdpFlightRecorder {
+    static final String OutcomeSuccess = "success";
+    static final String OutcomeDeadlineExceeded = "deadlineExceeded";
+    static final String OutcomeRejected = "rejected";
+    static final String OutcomeFailure = "failure";
+
+    private static final String EventsClassName = "security.build.pdp.client.PdpFlightRecorderEvents";
+
+    private static final Events Recorder = load();
+
+    /**
+     * Records the events, implemented by PdpFlightRecorderEvents on Java 11 and later.
+     */
+    interface Events {
+        Object beginEvaluation();
+
+        void commitEvaluation(Object event, PdpEvaluationMetrics metrics, PdpPriority priority, String outcome);
+
+        void commitRetry(PdpClientConfiguration configuration, ExecutionAttemptedEvent<?> attempted);
+    }
+
+    private PdpFlightRecorder() {
+    }
+
+    private static Events load() {
+        try {
+            return (Events) Class.forName(EventsClassName).getDeclaredConstructor().newInstance();
+        } catch (Throwable throwable) {
+            // Java 8, which cannot load the events, or Flight Recorder is missing or disabled on this runtime.
+            return null;
+        }
+    }
+
+    /**
+     * @return a started evaluation event to pass to commitEvaluation, or null if it is not recorded.
+     */
+    static Object beginEvaluation() {
+        return Recorder != null ? Recorder.beginEvaluation() : null;
+    }
+
+    /**
+     * @param event the event returned by beginEvaluation
+     * @param metrics the metrics of the evaluation
+     * @param priority the priority of the evaluation
+     */
+    static void commitEvaluation(Object event, PdpEvaluationMetrics metrics, PdpPriority priority) {
+        if (event != null) {
+            Recorder.commitEvaluation(event, metrics, priority, outcome(metrics.failure));
+        }
+    }
+
+    /**
+     * @param configuration the configuration of the retry policy
+     * @param attempted the failed attempt that is retried
+     */
+    static void commitRetry(PdpClientConfiguration configuration, ExecutionAttemptedEvent<?> attempted) {
+        if (Recorder != null) {
+            Recorder.commitRetry(configuration, attempted);
+        }
+    }
+
+    private static String outcome(Throwable failure) {
+        if (failure == null) {
+            return OutcomeSuccess;
+        } else if (failure instanceof PdpDeadlineExceededException) {
+            return OutcomeDeadlineExceeded;
+        } else if (failure instanceof RejectedExecutionException) {
+            return OutcomeRejected;
+        }
+
+        return OutcomeFailure;
+    }
+}
@@ -0,0 +1,15 @@
+package security.build.pdp.client;
+
+/**
+ * Receives the metrics of every evaluation completed by a PdpClient, whether it succeeded or failed.
+ *
+ * Listeners are called on the thread that made the evaluation, so they should return quickly.
+ */
+@FunctionalInterface
+public interface PdpMetricsListener {
+
+    /**
+     * @param metrics the metrics of the evaluation, whose getFailure() tells whether it failed.
+     */
+    void onEvaluation(PdpEvaluationMetrics metrics);
+}
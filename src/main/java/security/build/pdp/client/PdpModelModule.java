@@ -0,0 +1,381 @@
+package security.build.pdp.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.Serializers;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Registers hand-written serializers and deserializers for the PdpRequest model classes.
+ *
+ * They write and read the same JSON as Jackson's reflection-based bean binding, without introspecting the classes at
+ * runtime. This keeps serialization fast to warm up, and lets the model work in a GraalVM native image without
+ * reflection configuration. Maps are written by iterating their entries, so map views (e.g. over servlet headers) are
+ * streamed without being copied.
+ *
+ * The serializers only apply to the model classes themselves. Subclasses, e.g. an input extended with fields of the
+ * application, are written by Jackson's bean binding, so that their own fields are not dropped.
+ */
+public class PdpModelModule extends SimpleModule {
+
+    private final ExactClassSerializers exactSerializers = new ExactClassSerializers();
+
+    public PdpModelModule() {
+        super("PdpModelModule", Version.unknownVersion());
+
+        this.exactSerializers.add(PdpRequest.class, new RequestSerializer());
+        this.exactSerializers.add(PdpRequestInput.class, new InputSerializer());
+        this.exactSerializers.add(PdpRequestIncomingHttp.class, new IncomingHttpSerializer());
+        this.exactSerializers.add(PdpRequestResources.class, new ResourcesSerializer());
+        this.exactSerializers.add(PdpConnectionTuple.class, new ConnectionTupleSerializer());
+
+        this.addDeserializer(PdpRequest.class, new RequestDeserializer());
+        this.addDeserializer(PdpRequestInput.class, new InputDeserializer());
+        this.addDeserializer(PdpRequestIncomingHttp.class, new IncomingHttpDeserializer());
+        this.addDeserializer(PdpRequestResources.class, new ResourcesDeserializer());
+        this.addDeserializer(PdpConnectionTuple.class, new ConnectionTupleDeserializer());
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+
+        context.addSerializers(this.exactSerializers);
+    }
+
+    /**
+     * Finds the serializers of the model classes by their exact class. Unlike the serializers added to a SimpleModule,
+     * they are not used for subclasses, which are left to the bean serializers.
+     */
+    private static final class ExactClassSerializers extends Serializers.Base {
+        private final Map<Class<?>, JsonSerializer<?>> serializers = new HashMap<Class<?>, JsonSerializer<?>>();
+
+        <T> void add(Class<T> type, JsonSerializer<T> serializer) {
+            this.serializers.put(type, serializer);
+        }
+
+        @Override
+        public JsonSerializer<?> findSerializer(SerializationConfig config, JavaType type, BeanDescription beanDesc) {
+            return this.serializers.get(type.getRawClass());
+        }
+    }
+
+    // Serializers.
+
+    /**
+     * Writes a nested value that is an instance of a subclass of its model class through the provider, which uses the
+     * bean serializer of the subclass.
+     *
+     * @return true if the value was written, false if it is null or an instance of the model class itself.
+     */
+    private static boolean writeSubclass(JsonGenerator generator, SerializerProvider provider, Object value, Class<?> modelClass) throws IOException {
+        if (value == null || value.getClass() == modelClass) {
+            return false;
+        }
+
+        provider.defaultSerializeValue(value, generator);
+
+        return true;
+    }
+
+    static void writeRequest(JsonGenerator generator, SerializerProvider provider, PdpRequest request) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName("input");
+        writeInput(generator, provider, request.input);
+        generator.writeEndObject();
+    }
+
+    static void writeInput(JsonGenerator generator, SerializerProvider provider, PdpRequestInput input) throws IOException {
+        if (input == null) {
+            generator.writeNull();
+            return;
+        }
+
+        if (writeSubclass(generator, provider, input, PdpRequestInput.class)) {
+            return;
+        }
+
+        generator.writeStartObject();
+        generator.writeFieldName("request");
+        writeIncomingHttp(generator, provider, input.request);
+        generator.writeFieldName("resources");
+        writeResources(generator, provider, input.resources);
+        generator.writeFieldName("source");
+        writeConnectionTuple(generator, provider, input.source);
+        generator.writeFieldName("destination");
+        writeConnectionTuple(generator, provider, input.destination);
+        generator.writeEndObject();
+    }
+
+    static void writeIncomingHttp(JsonGenerator generator, SerializerProvider provider, PdpRequestIncomingHttp request) throws IOException {
+        if (request == null) {
+            generator.writeNull();
+            return;
+        }
+
+        if (writeSubclass(generator, provider, request, PdpRequestIncomingHttp.class)) {
+            return;
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("scheme", request.scheme);
+        generator.writeStringField("method", request.method);
+        generator.writeStringField("path", request.path);
+
+        generator.writeFieldName("query");
+        if (request.query == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartObject();
+            for (Map.Entry<String, String[]> entry : request.query.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                writeStringArray(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        }
+
+        generator.writeFieldName("headers");
+        writeStringMap(generator, request.headers);
+        generator.writeEndObject();
+    }
+
+    static void writeResources(JsonGenerator generator, SerializerProvider provider, PdpRequestResources resources) throws IOException {
+        if (resources == null) {
+            generator.writeNull();
+            return;
+        }
+
+        if (writeSubclass(generator, provider, resources, PdpRequestResources.class)) {
+            return;
+        }
+
+        generator.writeStartObject();
+        generator.writeFieldName("attributes");
+        writeStringMap(generator, resources.attributes);
+        generator.writeFieldName("permissions");
+        writeStringArray(generator, resources.permissions);
+        generator.writeEndObject();
+    }
+
+    static void writeConnectionTuple(JsonGenerator generator, SerializerProvider provider, PdpConnectionTuple tuple) throws IOException {
+        if (tuple == null) {
+            generator.writeNull();
+            return;
+        }
+
+        if (writeSubclass(generator, provider, tuple, PdpConnectionTuple.class)) {
+            return;
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("ipAddress", tuple.ipAddress);
+        generator.writeNumberField("port", tuple.port);
+        generator.writeEndObject();
+    }
+
+    private static void writeStringMap(JsonGenerator generator, Map<String, String> map) throws IOException {
+        if (map == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartObject();
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            generator.writeStringField(entry.getKey(), entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeStringArray(JsonGenerator generator, String[] values) throws IOException {
+        if (values == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartArray();
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    static class RequestSerializer extends JsonSerializer<PdpRequest> {
+        @Override
+        public void serialize(PdpRequest value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeRequest(generator, provider, value);
+        }
+    }
+
+    static class InputSerializer extends JsonSerializer<PdpRequestInput> {
+        @Override
+        public void serialize(PdpRequestInput value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeInput(generator, provider, value);
+        }
+    }
+
+    static class IncomingHttpSerializer extends JsonSerializer<PdpRequestIncomingHttp> {
+        @Override
+        public void serialize(PdpRequestIncomingHttp value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeIncomingHttp(generator, provider, value);
+        }
+    }
+
+    static class ResourcesSerializer extends JsonSerializer<PdpRequestResources> {
+        @Override
+        public void serialize(PdpRequestResources value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeResources(generator, provider, value);
+        }
+    }
+
+    static class ConnectionTupleSerializer extends JsonSerializer<PdpConnectionTuple> {
+        @Override
+        public void serialize(PdpConnectionTuple value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeConnectionTuple(generator, provider, value);
+        }
+    }
+
+    // Deserializers.
+
+    static PdpRequest readRequest(JsonNode node) {
+        if (!node.isObject()) {
+            return null;
+        }
+
+        return new PdpRequest(readInput(node.path("input")));
+    }
+
+    static PdpRequestInput readInput(JsonNode node) {
+        if (!node.isObject()) {
+            return null;
+        }
+
+        return new PdpRequestInput(
+                readIncomingHttp(node.path("request")),
+                readResources(node.path("resources")),
+                readConnectionTuple(node.path("source")),
+                readConnectionTuple(node.path("destination")));
+    }
+
+    static PdpRequestIncomingHttp readIncomingHttp(JsonNode node) {
+        if (!node.isObject()) {
+            return null;
+        }
+
+        Map<String, String[]> query = null;
+        JsonNode queryNode = node.path("query");
+        if (queryNode.isObject()) {
+            query = new LinkedHashMap<String, String[]>();
+
+            Iterator<Map.Entry<String, JsonNode>> fields = queryNode.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                query.put(field.getKey(), readStringArray(field.getValue()));
+            }
+        }
+
+        return new PdpRequestIncomingHttp(
+                readString(node.path("scheme")),
+                readString(node.path("method")),
+                readString(node.path("path")),
+                query,
+                readStringMap(node.path("headers")));
+    }
+
+    static PdpRequestResources readResources(JsonNode node) {
+        if (!node.isObject()) {
+            return null;
+        }
+
+        return new PdpRequestResources(
+                readStringArray(node.path("permissions")),
+                readStringMap(node.path("attributes")));
+    }
+
+    static PdpConnectionTuple readConnectionTuple(JsonNode node) {
+        if (!node.isObject()) {
+            return null;
+        }
+
+        return new PdpConnectionTuple(readString(node.path("ipAddress")), node.path("port").asInt());
+    }
+
+    private static String readString(JsonNode node) {
+        return node.isValueNode() && !node.isNull() ? node.asText() : null;
+    }
+
+    private static String[] readStringArray(JsonNode node) {
+        if (!node.isArray()) {
+            return null;
+        }
+
+        String[] values = new String[node.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(node.get(i));
+        }
+
+        return values;
+    }
+
+    private static Map<String, String> readStringMap(JsonNode node) {
+        if (!node.isObject()) {
+            return null;
+        }
+
+        Map<String, String> map = new LinkedHashMap<String, String>();
+
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            map.put(field.getKey(), readString(field.getValue()));
+        }
+
+        return map;
+    }
+
+    static class RequestDeserializer extends JsonDeserializer<PdpRequest> {
+        @Override
+        public PdpRequest deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return readRequest(parser.readValueAsTree());
+        }
+    }
+
+    static class InputDeserializer extends JsonDeserializer<PdpRequestInput> {
+        @Override
+        public PdpRequestInput deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return readInput(parser.readValueAsTree());
+        }
+    }
+
+    static class IncomingHttpDeserializer extends JsonDeserializer<PdpRequestIncomingHttp> {
+        @Override
+        public PdpRequestIncomingHttp deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return readIncomingHttp(parser.readValueAsTree());
+        }
+    }
+
+    static class ResourcesDeserializer extends JsonDeserializer<PdpRequestResources> {
+        @Override
+        public PdpRequestResources deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return readResources(parser.readValueAsTree());
+        }
+    }
+
+    static class ConnectionTupleDeserializer extends JsonDeserializer<PdpConnectionTuple> {
+        @Override
+        public PdpConnectionTuple deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return readConnectionTuple(parser.readValueAsTree());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package security.build.pdp.client;
+
+/**
+ * The priority class of an evaluation, used by PdpPriorityLanes to keep background traffic from starving interactive
+ * traffic.
+ */
+public enum PdpPriority {
+    /**
+     * Evaluations a user is waiting on, e.g. authorizing an incoming request.
+     */
+    INTERACTIVE,
+
+    /**
+     * Evaluations nobody is waiting on, e.g. batch reconciliation jobs.
+     */
+    BACKGROUND
+}
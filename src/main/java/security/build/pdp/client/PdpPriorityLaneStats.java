@@ -0,0 +1,78 @@
+package security.build.pdp.client;
+
+/**
+ * Holds a snapshot of the statistics of a single priority lane.
+ */
+public class PdpPriorityLaneStats {
+    PdpPriority priority;
+    long admitted;
+    long rejected;
+    int queued;
+    int inFlight;
+    long totalWaitNanos;
+    long maxWaitNanos;
+
+    PdpPriorityLaneStats(PdpPriority priority, long admitted, long rejected, int queued, int inFlight,
+                         long totalWaitNanos, long maxWaitNanos) {
+        this.priority = priority;
+        this.admitted = admitted;
+        this.rejected = rejected;
+        this.queued = queued;
+        this.inFlight = inFlight;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    public PdpPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the number of attempts that were allowed to call the Policy Decision Point.
+     */
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * @return the number of attempts that were rejected because the queue of the lane was full.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the number of attempts currently waiting in the queue of the lane.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return the number of attempts of the lane currently calling the Policy Decision Point.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the total time admitted attempts spent waiting in the queue, in nanoseconds.
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return the longest time an admitted attempt spent waiting in the queue, in nanoseconds.
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * @return the average time admitted attempts spent waiting in the queue, in nanoseconds.
+     */
+    public long getAverageWaitNanos() {
+        return admitted > 0 ? totalWaitNanos / admitted : 0;
+    }
+}
@@ -0,0 +1,423 @@
+package security.build.pdp.client;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Schedules calls to the Policy Decision Point by priority class, so that background traffic can't starve interactive
+ * traffic of connections.
+ *
+ * At most maxConcurrentRequests attempts call the Policy Decision Point at once. Each priority has its own bounded
+ * queue and its own concurrency budget, and when a slot frees up, waiting priorities are served by weighted round
+ * robin. Attempts are rejected with a RejectedExecutionException when the queue of their priority is full.
+ *
+ * Lanes can be shared by several PdpClients, so that they share the same budgets.
+ */
+public class PdpPriorityLanes {
+
+    public static int DefaultMaxConcurrentRequests = 64;
+    public static int DefaultQueueCapacity = 1024;
+    public static int DefaultInteractiveWeight = 4;
+    public static int DefaultBackgroundWeight = 1;
+
+    /**
+     * Fails asynchronous calls whose deadline is reached while they are queued. Shared by all lanes, since the tasks
+     * only withdraw tickets.
+     */
+    private static final ScheduledExecutorService DeadlineTimer = newDeadlineTimer();
+
+    private static ScheduledExecutorService newDeadlineTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "pdp-lane-deadlines");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+
+        return timer;
+    }
+
+    /**
+     * Allows constructing new PdpPriorityLanes with desired configuration.
+     */
+    public static class Builder {
+        private int maxConcurrentRequests = PdpPriorityLanes.DefaultMaxConcurrentRequests;
+        private final Map<PdpPriority, Integer> queueCapacities = new EnumMap<PdpPriority, Integer>(PdpPriority.class);
+        private final Map<PdpPriority, Integer> maxConcurrentRequestsByPriority = new EnumMap<PdpPriority, Integer>(PdpPriority.class);
+        private final Map<PdpPriority, Integer> weights = new EnumMap<PdpPriority, Integer>(PdpPriority.class);
+
+        public Builder() {
+            this.weights.put(PdpPriority.INTERACTIVE, PdpPriorityLanes.DefaultInteractiveWeight);
+            this.weights.put(PdpPriority.BACKGROUND, PdpPriorityLanes.DefaultBackgroundWeight);
+        }
+
+        /**
+         * Sets the maximum number of attempts, across all priorities, calling the Policy Decision Point at once.
+         */
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of attempts of a priority calling the Policy Decision Point at once. Defaults to
+         * maxConcurrentRequests.
+         */
+        public Builder maxConcurrentRequests(PdpPriority priority, int maxConcurrentRequests) {
+            this.maxConcurrentRequestsByPriority.put(priority, maxConcurrentRequests);
+
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of attempts of a priority waiting for a slot, beyond which attempts are rejected.
+         */
+        public Builder queueCapacity(PdpPriority priority, int queueCapacity) {
+            this.queueCapacities.put(priority, queueCapacity);
+
+            return this;
+        }
+
+        /**
+         * Sets the share of freed slots given to a priority while several priorities are waiting.
+         */
+        public Builder weight(PdpPriority priority, int weight) {
+            this.weights.put(priority, weight);
+
+            return this;
+        }
+
+        public PdpPriorityLanes build() {
+            if (this.maxConcurrentRequests < 1) {
+                throw new IllegalArgumentException(String.format("maxConcurrentRequests must be positive: %d", this.maxConcurrentRequests));
+            }
+
+            PdpPriorityLanes lanes = new PdpPriorityLanes(this.maxConcurrentRequests);
+
+            for (PdpPriority priority : PdpPriority.values()) {
+                int weight = this.weights.getOrDefault(priority, 1);
+                if (weight < 1) {
+                    throw new IllegalArgumentException(String.format("weight of %s must be positive: %d", priority, weight));
+                }
+
+                lanes.lanes.put(priority, new Lane(
+                        priority,
+                        this.maxConcurrentRequestsByPriority.getOrDefault(priority, this.maxConcurrentRequests),
+                        this.queueCapacities.getOrDefault(priority, PdpPriorityLanes.DefaultQueueCapacity),
+                        weight));
+            }
+
+            return lanes;
+        }
+    }
+
+    /**
+     * A pending request for a slot.
+     */
+    private static final class Ticket {
+        final Lane lane;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<Void> granted = new CompletableFuture<Void>();
+
+        Ticket(Lane lane) {
+            this.lane = lane;
+        }
+    }
+
+    private static final class Lane {
+        final PdpPriority priority;
+        final int maxConcurrentRequests;
+        final int queueCapacity;
+        final int weight;
+
+        final ArrayDeque<Ticket> queue = new ArrayDeque<Ticket>();
+        int inFlight = 0;
+        int currentWeight = 0;
+
+        long admitted = 0;
+        long rejected = 0;
+        long totalWaitNanos = 0;
+        long maxWaitNanos = 0;
+
+        Lane(PdpPriority priority, int maxConcurrentRequests, int queueCapacity, int weight) {
+            this.priority = priority;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            this.queueCapacity = queueCapacity;
+            this.weight = weight;
+        }
+
+        boolean canRun() {
+            return this.inFlight < this.maxConcurrentRequests;
+        }
+
+        void admit(long waitNanos) {
+            this.inFlight++;
+            this.admitted++;
+            this.totalWaitNanos += waitNanos;
+            this.maxWaitNanos = Math.max(this.maxWaitNanos, waitNanos);
+        }
+    }
+
+    private final int maxConcurrentRequests;
+    private final Map<PdpPriority, Lane> lanes = new EnumMap<PdpPriority, Lane>(PdpPriority.class);
+    private int inFlight = 0;
+    private boolean dispatching = false;
+
+    private PdpPriorityLanes(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return this.maxConcurrentRequests;
+    }
+
+    /**
+     * Requests a slot to call the Policy Decision Point. The slot must be released once the call is over.
+     *
+     * @param priority the priority of the call.
+     * @return a future completed once the slot is granted.
+     * @throws RejectedExecutionException if the queue of the priority is full.
+     */
+    CompletableFuture<Void> acquire(PdpPriority priority) {
+        Lane lane = this.lanes.get(priority);
+
+        synchronized (this) {
+            if (lane.queue.isEmpty() && lane.canRun() && this.inFlight < this.maxConcurrentRequests) {
+                lane.admit(0);
+                this.inFlight++;
+
+                return CompletableFuture.completedFuture(null);
+            }
+
+            if (lane.queue.size() >= lane.queueCapacity) {
+                lane.rejected++;
+
+                throw new RejectedExecutionException(String.format("Queue of %s priority lane is full", priority));
+            }
+
+            Ticket ticket = new Ticket(lane);
+            lane.queue.add(ticket);
+
+            return ticket.granted;
+        }
+    }
+
+    /**
+     * Blocks until a slot is granted to call the Policy Decision Point, or the deadline is reached.
+     *
+     * @param priority the priority of the call.
+     * @param deadline the deadline of the call, or null to wait indefinitely.
+     * @throws RejectedExecutionException if the queue of the priority is full.
+     * @throws PdpDeadlineExceededException if the deadline is reached while waiting.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    void acquireBlocking(PdpPriority priority, PdpDeadline deadline) throws PdpDeadlineExceededException, InterruptedException {
+        CompletableFuture<Void> granted = this.acquire(priority);
+
+        try {
+            if (deadline == null) {
+                granted.get();
+            } else {
+                granted.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException exception) {
+            this.cancel(priority, granted);
+
+            throw new PdpDeadlineExceededException(String.format("Deadline exceeded while queued in %s priority lane", priority));
+        } catch (InterruptedException exception) {
+            this.cancel(priority, granted);
+
+            throw exception;
+        } catch (ExecutionException exception) {
+            // Tickets are never completed exceptionally.
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    /**
+     * Requests a slot to call the Policy Decision Point without blocking, until the deadline is reached. The slot must
+     * be released once the call is over, unless the returned future failed.
+     *
+     * @param priority the priority of the call.
+     * @param deadline the deadline of the call, or null to wait indefinitely.
+     * @return a future completed once the slot is granted, or completed exceptionally with a
+     * PdpDeadlineExceededException if the deadline is reached while queued.
+     * @throws RejectedExecutionException if the queue of the priority is full.
+     */
+    CompletableFuture<Void> acquireAsync(PdpPriority priority, PdpDeadline deadline) {
+        CompletableFuture<Void> granted = this.acquire(priority);
+
+        if (deadline == null || granted.isDone()) {
+            return granted;
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<Void>();
+
+        ScheduledFuture<?> timeout = DeadlineTimer.schedule(() -> {
+            // A ticket granted concurrently completes the result below instead.
+            if (this.withdraw(priority, granted)) {
+                result.completeExceptionally(new PdpDeadlineExceededException(
+                        String.format("Deadline exceeded while queued in %s priority lane", priority)));
+            }
+        }, deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+
+        granted.thenRun(() -> {
+            timeout.cancel(false);
+            result.complete(null);
+        });
+
+        return result;
+    }
+
+    /**
+     * Gives up on a requested slot, releasing it if it was granted in the meantime.
+     */
+    void cancel(PdpPriority priority, CompletableFuture<Void> granted) {
+        if (!this.withdraw(priority, granted)) {
+            // The slot was granted concurrently, so it must be given back.
+            this.release(priority);
+        }
+    }
+
+    /**
+     * Removes a requested slot from its queue, unless it was already granted.
+     *
+     * @return true if the slot was withdrawn, false if it was granted.
+     */
+    private boolean withdraw(PdpPriority priority, CompletableFuture<Void> granted) {
+        if (!granted.cancel(false)) {
+            return false;
+        }
+
+        synchronized (this) {
+            this.lanes.get(priority).queue.removeIf(ticket -> ticket.granted == granted);
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases a slot granted by acquire, and grants freed slots to waiting calls.
+     *
+     * @param priority the priority the slot was granted to.
+     */
+    void release(PdpPriority priority) {
+        synchronized (this) {
+            this.lanes.get(priority).inFlight--;
+            this.inFlight--;
+        }
+
+        this.dispatch();
+    }
+
+    /**
+     * Grants free slots to waiting calls.
+     *
+     * Only one thread dispatches at a time, and it loops until no slot can be granted. Completing a ticket runs the
+     * continuation of an asynchronous call on the same stack, which may fail right away and release its slot, so a
+     * release during a dispatch leaves the slot to the loop instead of dispatching recursively, which could overflow
+     * the stack with a long queue.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            if (this.dispatching) {
+                return;
+            }
+
+            this.dispatching = true;
+        }
+
+        boolean idle = false;
+        try {
+            while (true) {
+                Ticket next;
+
+                synchronized (this) {
+                    next = this.poll();
+
+                    if (next == null) {
+                        // Cleared under the same lock as the check, so a concurrent release either was seen by the check
+                        // or dispatches itself.
+                        this.dispatching = false;
+                        idle = true;
+
+                        return;
+                    }
+                }
+
+                // Complete outside the lock, since completing may run the continuation of an asynchronous call.
+                if (!next.granted.complete(null)) {
+                    // The ticket was cancelled after being polled, so hand its slot to the next call.
+                    synchronized (this) {
+                        next.lane.inFlight--;
+                        next.lane.admitted--;
+                        this.inFlight--;
+                    }
+                }
+            }
+        } finally {
+            if (!idle) {
+                synchronized (this) {
+                    this.dispatching = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Admits the next waiting call if there is a free slot, picking the lane by smooth weighted round robin among the
+     * lanes that have calls waiting and room in their own budget. Must be called while holding the lock.
+     *
+     * @return the ticket of the admitted call, or null if no call can be admitted.
+     */
+    private Ticket poll() {
+        if (this.inFlight >= this.maxConcurrentRequests) {
+            return null;
+        }
+
+        int totalWeight = 0;
+        Lane selected = null;
+
+        for (Lane lane : this.lanes.values()) {
+            if (lane.queue.isEmpty() || !lane.canRun()) {
+                continue;
+            }
+
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+
+            if (selected == null || lane.currentWeight > selected.currentWeight) {
+                selected = lane;
+            }
+        }
+
+        if (selected == null) {
+            return null;
+        }
+
+        selected.currentWeight -= totalWeight;
+
+        Ticket next = selected.queue.poll();
+        selected.admit(System.nanoTime() - next.enqueuedNanos);
+        this.inFlight++;
+
+        return next;
+    }
+
+    /**
+     * @param priority the priority of the lane.
+     * @return a snapshot of the statistics of the lane.
+     */
+    public PdpPriorityLaneStats getStats(PdpPriority priority) {
+        Lane lane = this.lanes.get(priority);
+
+        synchronized (this) {
+            return new PdpPriorityLaneStats(priority, lane.admitted, lane.rejected, lane.queue.size(), lane.inFlight,
+                    lane.totalWaitNanos, lane.maxWaitNanos);
+        }
+    }
+}
@@ -13,6 +13,13 @@ public class PdpRequestInput {
         this.destination = new PdpConnectionTuple(destination, 0);
     }
 
+    public PdpRequestInput(PdpRequestIncomingHttp request, PdpRequestResources resources, PdpConnectionTuple source, PdpConnectionTuple destination) {
+        this.request = request;
+        this.resources = resources;
+        this.source = source;
+        this.destination = destination;
+    }
+
     public PdpRequestInput() {
         this.request = new PdpRequestIncomingHttp();
         this.resources = new PdpRequestResources();
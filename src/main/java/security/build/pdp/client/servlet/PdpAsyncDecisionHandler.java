@@ -0,0 +1,22 @@
+package security.build.pdp.client.servlet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import javax.servlet.AsyncContext;
+
+/**
+ * Handles the decision of the Policy Decision Point for a request that was put in asynchronous mode.
+ *
+ * The handler is responsible for ending the asynchronous mode, either by completing the response (e.g. after sending
+ * a 403) or by dispatching the request back to the container.
+ */
+@FunctionalInterface
+public interface PdpAsyncDecisionHandler {
+
+    /**
+     * @param context the asynchronous context of the request.
+     * @param decision the JSON object response from the Policy Decision Point, or null if the evaluation failed.
+     * @param failure the failure that ended the evaluation after all retries, or null if the evaluation succeeded.
+     */
+    void onDecision(AsyncContext context, JsonNode decision, Throwable failure);
+}
@@ -0,0 +1,71 @@
+package security.build.pdp.client.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
+
+/**
+ * Exposes the headers of a servlet request as a read-only map, without copying them.
+ *
+ * Lookups are delegated to the request, so they are case-insensitive, and iterating the map walks the header names of
+ * the request lazily. Headers with multiple values are represented by their first value.
+ */
+class PdpServletHeaderMap extends AbstractMap<String, String> {
+
+    private final HttpServletRequest request;
+
+    PdpServletHeaderMap(HttpServletRequest request) {
+        this.request = request;
+    }
+
+    @Override
+    public String get(Object key) {
+        return key instanceof String ? this.request.getHeader((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        Enumeration<String> names = this.request.getHeaderNames();
+
+        return names == null || !names.hasMoreElements();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                Enumeration<String> names = request.getHeaderNames();
+
+                if (names == null) {
+                    return Collections.emptyIterator();
+                }
+
+                return new Iterator<Entry<String, String>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return names.hasMoreElements();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        String name = names.nextElement();
+
+                        return new SimpleImmutableEntry<String, String>(name, request.getHeader(name));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                Enumeration<String> names = request.getHeaderNames();
+
+                return names == null ? 0 : Collections.list(names).size();
+            }
+        };
+    }
+}
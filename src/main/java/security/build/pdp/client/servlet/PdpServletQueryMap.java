@@ -0,0 +1,80 @@
+package security.build.pdp.client.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.*;
+
+/**
+ * Exposes the query parameters of a servlet request as a read-only map, parsed from the query string on first access.
+ *
+ * Unlike HttpServletRequest.getParameterMap, this never reads form parameters from the request body, so building a
+ * PdpRequest doesn't consume the body before the application gets to it.
+ */
+class PdpServletQueryMap extends AbstractMap<String, String[]> {
+
+    private final HttpServletRequest request;
+    private Map<String, String[]> parameters;
+
+    PdpServletQueryMap(HttpServletRequest request) {
+        this.request = request;
+    }
+
+    private Map<String, String[]> parameters() {
+        if (this.parameters == null) {
+            this.parameters = parse(this.request.getQueryString());
+        }
+
+        return this.parameters;
+    }
+
+    static Map<String, String[]> parse(String queryString) {
+        if (queryString == null || queryString.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+
+        for (String pair : queryString.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+
+            int separator = pair.indexOf('=');
+            String name = decode(separator < 0 ? pair : pair.substring(0, separator));
+            String value = separator < 0 ? "" : decode(pair.substring(separator + 1));
+
+            values.computeIfAbsent(name, key -> new ArrayList<String>()).add(value);
+        }
+
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        for (Entry<String, List<String>> entry : values.entrySet()) {
+            parameters.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+        }
+
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException exception) {
+            return value;
+        }
+    }
+
+    @Override
+    public String[] get(Object key) {
+        return this.parameters().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.parameters().containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<String, String[]>> entrySet() {
+        return this.parameters().entrySet();
+    }
+}
@@ -0,0 +1,168 @@
+package security.build.pdp.client.servlet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import security.build.pdp.client.*;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Builds PdpRequests from servlet requests, and evaluates them without holding container threads.
+ *
+ * The headers and query parameters of the built requests are views over the servlet request rather than copies, so
+ * they are only read when the request is serialized. A PdpRequest built here must therefore not be used after the
+ * servlet request has completed.
+ *
+ * The evaluateAsync methods instead copy the headers and query parameters once, on the calling thread, because retried
+ * attempts serialize the request again on other threads, possibly after the servlet request was recycled.
+ */
+public final class PdpServletRequests {
+
+    /**
+     * The time kept for the decision handler between the end of an evaluation and the asynchronous timeout of the
+     * container.
+     */
+    public static long AsyncTimeoutHandlerMilliseconds = 100;
+
+    private PdpServletRequests() {
+    }
+
+    /**
+     * @param request the servlet request.
+     * @return the incoming HTTP request, backed by views over the headers and query string of the servlet request.
+     */
+    public static PdpRequestIncomingHttp incomingHttp(HttpServletRequest request) {
+        return new PdpRequestIncomingHttp(
+                request.getScheme(),
+                request.getMethod(),
+                request.getRequestURI(),
+                new PdpServletQueryMap(request),
+                new PdpServletHeaderMap(request));
+    }
+
+    /**
+     * @param request the servlet request.
+     * @param resources the resources the request needs access to.
+     * @return the PdpRequest describing the servlet request.
+     */
+    public static PdpRequest pdpRequest(HttpServletRequest request, PdpRequestResources resources) {
+        return pdpRequest(request, incomingHttp(request), resources);
+    }
+
+    /**
+     * @param request the servlet request.
+     * @param resources the resources the request needs access to.
+     * @return the PdpRequest describing the servlet request, with copies of its headers and query parameters, so that
+     * it can be serialized after the servlet request has completed.
+     */
+    private static PdpRequest copiedPdpRequest(HttpServletRequest request, PdpRequestResources resources) {
+        // Walks the header names once, where copying the view with a constructor would also count them.
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> header : new PdpServletHeaderMap(request).entrySet()) {
+            headers.put(header.getKey(), header.getValue());
+        }
+
+        PdpRequestIncomingHttp incomingHttp = new PdpRequestIncomingHttp(
+                request.getScheme(),
+                request.getMethod(),
+                request.getRequestURI(),
+                PdpServletQueryMap.parse(request.getQueryString()),
+                headers);
+
+        return pdpRequest(request, incomingHttp, resources);
+    }
+
+    private static PdpRequest pdpRequest(HttpServletRequest request, PdpRequestIncomingHttp incomingHttp, PdpRequestResources resources) {
+        return new PdpRequest(new PdpRequestInput(
+                incomingHttp,
+                resources,
+                new PdpConnectionTuple(request.getRemoteAddr(), request.getRemotePort()),
+                new PdpConnectionTuple(request.getLocalAddr(), request.getLocalPort())));
+    }
+
+    /**
+     * Evaluates the servlet request asynchronously. The headers and query parameters are copied before returning, so
+     * the servlet request may complete before the evaluation does.
+     *
+     * @param client the client used to call the Policy Decision Point.
+     * @param request the servlet request.
+     * @param resources the resources the request needs access to.
+     * @return a future of the JSON object response from the Policy Decision Point.
+     */
+    public static CompletableFuture<JsonNode> evaluateAsync(PdpClient client, HttpServletRequest request, PdpRequestResources resources) {
+        return client.getJsonResponseAsync(copiedPdpRequest(request, resources));
+    }
+
+    /**
+     * Puts the request in asynchronous mode and evaluates it, so the container thread is released during the call to
+     * the Policy Decision Point. The handler is called with the decision once it is available.
+     *
+     * Typically called from a filter, whose handler either completes the response when access is denied, or stores
+     * the decision in a request attribute and dispatches the request back to the filter chain. If the handler throws,
+     * the response is completed with a 500.
+     *
+     * The evaluation, including its retries, is bounded by the asynchronous timeout of the context, less
+     * AsyncTimeoutHandlerMilliseconds for the handler, so that the handler gets the failure before the container times
+     * out and recycles the request.
+     *
+     * @param client the client used to call the Policy Decision Point.
+     * @param request the servlet request, which must support asynchronous processing.
+     * @param response the servlet response.
+     * @param resources the resources the request needs access to.
+     * @param handler the handler of the decision.
+     * @return the asynchronous context of the request.
+     */
+    public static AsyncContext evaluateAsync(PdpClient client, HttpServletRequest request, ServletResponse response,
+                                             PdpRequestResources resources, PdpAsyncDecisionHandler handler) {
+        PdpRequest pdpRequest = copiedPdpRequest(request, resources);
+        AsyncContext context = request.startAsync((ServletRequest) request, response);
+
+        long timeout = context.getTimeout();
+        CompletableFuture<JsonNode> evaluation = timeout > 0
+                ? client.getJsonResponseAsync(pdpRequest, asyncDeadline(timeout))
+                : client.getJsonResponseAsync(pdpRequest);
+
+        evaluation.whenComplete((decision, failure) -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+
+            try {
+                handler.onDecision(context, decision, cause);
+            } catch (Throwable throwable) {
+                // Nothing would end the asynchronous mode otherwise, and the request would hang until it timed out.
+                completeWithError(context);
+            }
+        });
+
+        return context;
+    }
+
+    /**
+     * @param timeout the asynchronous timeout of the context, in milliseconds.
+     * @return the deadline of the evaluation, which leaves time for the handler, but at most half of the timeout.
+     */
+    static Duration asyncDeadline(long timeout) {
+        return Duration.ofMillis(Math.max(timeout - AsyncTimeoutHandlerMilliseconds, timeout / 2));
+    }
+
+    private static void completeWithError(AsyncContext context) {
+        try {
+            ServletResponse response = context.getResponse();
+
+            if (response instanceof HttpServletResponse && !response.isCommitted()) {
+                ((HttpServletResponse) response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+
+            context.complete();
+        } catch (IllegalStateException exception) {
+            // The handler completed or dispatched the context before it threw.
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package security.build.pdp.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event spanning a single evaluation, from the first attempt until the response was decoded or the
+ * evaluation failed.
+ *
+ * Only referenced through PdpFlightRecorderEvents, so that the client still loads on runtimes without Flight Recorder.
+ */
+@Name(PdpEvaluationEvent.Name)
+@Label("PDP Evaluation")
+@Category({"Open Policy Agent", "PDP Client"})
+@Description("An authorization decision requested from the Policy Decision Point, including its retries")
+@StackTrace(false)
+final class PdpEvaluationEvent extends jdk.jfr.Event {
+    static final String Name = "security.build.pdp.Evaluation";
+
+    private static final EventType Type = EventType.getEventType(PdpEvaluationEvent.class);
+
+    @Label("Policy Path")
+    String policyPath;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Priority")
+    String priority;
+
+    @Label("Attempts")
+    int attempts;
+
+    @Label("Status Code")
+    @Description("The HTTP status code of the last attempt, or 0 if it received no response")
+    int statusCode;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Queue Time")
+    @Timespan
+    long queueDuration;
+
+    @Label("Encode Time")
+    @Timespan
+    long encodeDuration;
+
+    @Label("Network Time")
+    @Timespan
+    long networkDuration;
+
+    @Label("Decode Time")
+    @Timespan
+    long decodeDuration;
+
+    @Label("Outcome")
+    @Description("success, deadlineExceeded, rejected or failure")
+    String outcome;
+
+    @Label("Failure")
+    String failure;
+
+    /**
+     * @return a started event, or null if the event is not enabled in any recording.
+     */
+    static PdpEvaluationEvent beginIfEnabled() {
+        if (!Type.isEnabled()) {
+            return null;
+        }
+
+        PdpEvaluationEvent event = new PdpEvaluationEvent();
+        event.begin();
+
+        return event;
+    }
+
+    void commit(PdpEvaluationMetrics metrics, PdpPriority priority, String outcome) {
+        this.end();
+
+        if (!this.shouldCommit()) {
+            return;
+        }
+
+        this.policyPath = metrics.policyPath;
+        this.endpoint = metrics.endpoint;
+        this.priority = priority != null ? priority.name() : null;
+        this.attempts = metrics.attempts;
+        this.statusCode = metrics.statusCode;
+        this.requestBytes = metrics.requestBytes;
+        this.responseBytes = metrics.responseBytes;
+        this.queueDuration = metrics.queueNanos;
+        this.encodeDuration = metrics.encodeNanos;
+        this.networkDuration = metrics.networkNanos;
+        this.decodeDuration = metrics.decodeNanos;
+        this.outcome = outcome;
+        this.failure = metrics.failure != null ? metrics.failure.toString() : null;
+
+        this.commit();
+    }
+}
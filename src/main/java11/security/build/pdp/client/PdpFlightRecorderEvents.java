@@ -0,0 +1,32 @@
+package security.build.pdp.client;
+
+import jdk.jfr.FlightRecorder;
+import net.jodah.failsafe.event.ExecutionAttemptedEvent;
+
+/**
+ * The Flight Recorder events of PdpClient, on Java 11 and later.
+ *
+ * Loaded by name from PdpFlightRecorder, which is compiled for Java 8 and cannot reference jdk.jfr.
+ */
+final class PdpFlightRecorderEvents implements PdpFlightRecorder.Events {
+
+    PdpFlightRecorderEvents() {
+        FlightRecorder.register(PdpEvaluationEvent.class);
+        FlightRecorder.register(PdpRetryEvent.class);
+    }
+
+    @Override
+    public Object beginEvaluation() {
+        return PdpEvaluationEvent.beginIfEnabled();
+    }
+
+    @Override
+    public void commitEvaluation(Object event, PdpEvaluationMetrics metrics, PdpPriority priority, String outcome) {
+        ((PdpEvaluationEvent) event).commit(metrics, priority, outcome);
+    }
+
+    @Override
+    public void commitRetry(PdpClientConfiguration configuration, ExecutionAttemptedEvent<?> attempted) {
+        PdpRetryEvent.commit(configuration, attempted);
+    }
+}
@@ -0,0 +1,63 @@
+package security.build.pdp.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import net.jodah.failsafe.event.ExecutionAttemptedEvent;
+
+import java.net.MalformedURLException;
+
+/**
+ * Flight Recorder event for a failed attempt that the retry policy is about to retry.
+ *
+ * Only referenced through PdpFlightRecorderEvents, so that the client still loads on runtimes without Flight Recorder.
+ */
+@Name(PdpRetryEvent.Name)
+@Label("PDP Retry")
+@Category({"Open Policy Agent", "PDP Client"})
+@Description("A failed attempt to call the Policy Decision Point that is retried")
+@StackTrace(false)
+final class PdpRetryEvent extends jdk.jfr.Event {
+    static final String Name = "security.build.pdp.Retry";
+
+    @Label("Policy Path")
+    String policyPath;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Attempt")
+    @Description("The number of the failed attempt, starting at 1")
+    int attempt;
+
+    @Label("Elapsed Time")
+    @Description("The time since the first attempt of the evaluation started")
+    @Timespan
+    long elapsedDuration;
+
+    @Label("Failure")
+    String failure;
+
+    static void commit(PdpClientConfiguration configuration, ExecutionAttemptedEvent<?> attempted) {
+        PdpRetryEvent event = new PdpRetryEvent();
+
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.policyPath = configuration.getPolicyPath();
+        try {
+            event.endpoint = configuration.getPdpEndpoint();
+        } catch (MalformedURLException exception) {
+            // The attempt failed on the endpoint itself, which the failure describes.
+        }
+        event.attempt = attempted.getAttemptCount();
+        event.elapsedDuration = attempted.getElapsedTime().toNanos();
+        event.failure = attempted.getLastFailure() != null ? attempted.getLastFailure().toString() : null;
+
+        event.commit();
+    }
+}
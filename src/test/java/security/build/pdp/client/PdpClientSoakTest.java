@@ -0,0 +1,209 @@
+package security.build.pdp.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.jodah.failsafe.FailsafeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a PdpClient against a StubPdpServer at a configurable concurrency, and asserts bounds on retry amplification,
+ * threads, connections and tail latency.
+ *
+ * The load can be raised with the pdp.soak.concurrency and pdp.soak.requests system properties, e.g.
+ * mvn test -Dtest=PdpClientSoakTest -Dpdp.soak.concurrency=64 -Dpdp.soak.requests=20000
+ */
+class PdpClientSoakTest {
+
+    private static final int Concurrency = Integer.getInteger("pdp.soak.concurrency", 16);
+    private static final int Requests = Integer.getInteger("pdp.soak.requests", 400);
+
+    private static final int RetryMaxAttempts = 3;
+    private static final int RetryBackoffMilliseconds = 10;
+    private static final int ReadTimeoutMilliseconds = 200;
+
+    // OkHttp's task runner threads are shared with the stub server, so a few of them are counted as client threads.
+    private static final int MaxExtraClientThreads = 8;
+
+    private static class SoakResult {
+        int succeeded;
+        int failed;
+        List<Long> latenciesMilliseconds = new ArrayList<Long>();
+        int maxClientThreads;
+
+        long percentile(double percentile) {
+            List<Long> sorted = new ArrayList<Long>(this.latenciesMilliseconds);
+            Collections.sort(sorted);
+
+            return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+        }
+    }
+
+    /**
+     * Counts live threads, excluding the threads of the stub server and of the load generator.
+     */
+    private static int countClientThreads() {
+        int count = 0;
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+
+            if (!name.startsWith("MockWebServer") && !name.startsWith("pdp-soak-")) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static SoakResult soak(PdpClient client) throws InterruptedException {
+        SoakResult result = new SoakResult();
+        AtomicInteger threadCounter = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Concurrency,
+                runnable -> new Thread(runnable, "pdp-soak-" + threadCounter.incrementAndGet()));
+
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int i = 0; i < Requests; i++) {
+            futures.add(executor.submit(() -> {
+                long start = System.nanoTime();
+
+                try {
+                    JsonNode node = client.getJsonResponse(new PdpRequest());
+
+                    Assertions.assertNotNull(node);
+                } catch (Throwable throwable) {
+                    throw new Exception(throwable);
+                }
+
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }));
+        }
+
+        for (Future<Long> future : futures) {
+            result.maxClientThreads = Math.max(result.maxClientThreads, countClientThreads());
+
+            try {
+                result.latenciesMilliseconds.add(future.get());
+                result.succeeded++;
+            } catch (ExecutionException exception) {
+                result.failed++;
+            }
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        return result;
+    }
+
+    private static PdpClient newClient(StubPdpServer server) {
+        PdpClient client = server.clientBuilder()
+                .retryMaxAttempts(RetryMaxAttempts)
+                .retryBackoffMilliseconds(RetryBackoffMilliseconds)
+                .readTimeoutMilliseconds(ReadTimeoutMilliseconds)
+                .connectionTimeoutMilliseconds(ReadTimeoutMilliseconds)
+                .build();
+
+        // Create the HTTP client before the load starts, so that its one-time initialization isn't in the latencies.
+        client.getHttpClient();
+
+        return client;
+    }
+
+    /**
+     * @return the worst case latency of a single evaluation: every attempt times out and every backoff is maxed out.
+     */
+    private static long worstCaseLatencyMilliseconds(long serverLatencyMilliseconds) {
+        long maxBackoff = (long) RetryBackoffMilliseconds * RetryMaxAttempts + 1;
+
+        return RetryMaxAttempts * (ReadTimeoutMilliseconds + serverLatencyMilliseconds)
+                + (RetryMaxAttempts - 1) * maxBackoff;
+    }
+
+    @Test()
+    void soak_healthyServer() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(2, 3)) {
+            PdpClient client = newClient(server);
+            int baselineThreads = countClientThreads();
+
+            SoakResult result = soak(client);
+
+            // Assert that nothing failed, and retries stay rare. Some read timeouts are expected at high concurrency
+            // on a loaded machine, but they must not snowball into a retry storm.
+            Assertions.assertEquals(Requests, result.succeeded);
+            Assertions.assertTrue(server.getRequestCount() - Requests <= Requests / 100,
+                    String.format("%d attempts for %d requests", server.getRequestCount(), Requests));
+
+            // Assert that the connection pool was reused rather than opening a connection per request.
+            Assertions.assertTrue(server.getConnectionCount() <= Concurrency * 2,
+                    String.format("%d connections for %d concurrent callers", server.getConnectionCount(), Concurrency));
+
+            // Assert that synchronous calls don't spawn threads per request or per caller.
+            Assertions.assertTrue(result.maxClientThreads - baselineThreads <= MaxExtraClientThreads,
+                    String.format("%d threads, %d at start", result.maxClientThreads, baselineThreads));
+        }
+    }
+
+    @Test()
+    void slowBodies_readTimeoutRetried() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().slowBodies(1, ReadTimeoutMilliseconds * 2)) {
+            PdpClient client = newClient(server);
+
+            FailsafeException exception = Assertions.assertThrows(FailsafeException.class,
+                    () -> client.getJsonResponse(new PdpRequest()));
+            Assertions.assertTrue(exception.getCause() instanceof SocketTimeoutException);
+
+            // Assert that the injected fault really trips the read timeout, so that it can account for a retry.
+            Assertions.assertEquals(RetryMaxAttempts, server.getRequestCount());
+            Assertions.assertEquals(RetryMaxAttempts, server.getFaultCount());
+        }
+    }
+
+    @Test()
+    void soak_degradedServer() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer()
+                .latency(2, 5)
+                .resets(0.05)
+                .slowBodies(0.02, ReadTimeoutMilliseconds * 2)
+                .errorBurst(Requests / 20)) {
+            PdpClient client = newClient(server);
+            int baselineThreads = countClientThreads();
+
+            SoakResult result = soak(client);
+
+            // Assert that retries are bounded: every extra attempt is caused by an injected fault, and no evaluation
+            // makes more than the configured number of attempts.
+            int retries = server.getRequestCount() - Requests;
+            Assertions.assertTrue(retries >= 0);
+            Assertions.assertTrue(server.getRequestCount() <= Requests * RetryMaxAttempts);
+            Assertions.assertTrue(retries <= server.getFaultCount(),
+                    String.format("%d retries for %d injected faults", retries, server.getFaultCount()));
+
+            // Assert that 5xx responses are returned as decisions rather than retried, so that a burst of errors
+            // doesn't turn into a burst of retries.
+            Assertions.assertTrue(result.succeeded >= Requests - server.getFaultCount());
+
+            // Assert that broken connections are replaced, but the pool is otherwise reused.
+            Assertions.assertTrue(server.getConnectionCount() <= Concurrency * 2 + server.getFaultCount(),
+                    String.format("%d connections for %d faults", server.getConnectionCount(), server.getFaultCount()));
+
+            // Assert that the server never saw more concurrent requests than there are callers.
+            Assertions.assertTrue(server.getMaxInFlight() <= Concurrency);
+
+            Assertions.assertTrue(result.maxClientThreads - baselineThreads <= MaxExtraClientThreads,
+                    String.format("%d threads, %d at start", result.maxClientThreads, baselineThreads));
+
+            // Assert that the tail latency stays within what the timeouts and retry policy allow.
+            long p99 = result.percentile(0.99);
+            Assertions.assertTrue(p99 <= worstCaseLatencyMilliseconds(100),
+                    String.format("p99 %dms exceeds %dms", p99, worstCaseLatencyMilliseconds(100)));
+        }
+    }
+}
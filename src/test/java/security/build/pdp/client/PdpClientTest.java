@@ -11,11 +11,18 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.*;
 import java.net.MalformedURLException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.*;
 
@@ -47,9 +54,15 @@ class PdpClientTest {
         staticPdpClient.setMockHttpClient(this.mockHttpClient);
 
         // Use a different mock Response for each test, because Response body is consumable only once.
-        String mockResponseBody = "{\"a\":\"1\",\"b\":\"2\"}";
+        this.mockResponse = newMockResponse();
+    }
+
+    private static Response newMockResponse() {
+        return newMockResponse("{\"a\":\"1\",\"b\":\"2\"}");
+    }
 
-        this.mockResponse = new Response.Builder()
+    private static Response newMockResponse(String mockResponseBody) {
+        return new Response.Builder()
                 .request(new Request.Builder().url("http://random.org").build())
                 .protocol(Protocol.HTTP_1_0)
                 .message(new String("message"))
@@ -328,5 +341,530 @@ class PdpClientTest {
         // Assert that there were exactly 2 attempts
         verify(this.mockCall, times(2)).execute();
     }
-}
 
+    @Test()
+    void getJsonResponses_ordered() throws Throwable {
+        doAnswer(invocation -> {
+            Callback callback = invocation.getArgument(0);
+            callback.onResponse(this.mockCall, newMockResponse());
+
+            return null;
+        }).when(this.mockCall).enqueue(any(Callback.class));
+
+        List<PdpRequest> requests = new ArrayList<PdpRequest>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(new PdpRequest());
+        }
+
+        List<PdpBulkResult> results;
+        try (Stream<PdpBulkResult> stream = staticPdpClient.getJsonResponses(requests.stream(), 4, true)) {
+            results = stream.collect(Collectors.toList());
+        }
+
+        // Assert that every request was evaluated exactly once without blocking, and results are in request order.
+        verify(this.mockCall, times(20)).enqueue(any(Callback.class));
+        verify(this.mockCall, never()).execute();
+        Assertions.assertEquals(20, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Assertions.assertEquals(i, results.get(i).getIndex());
+            Assertions.assertSame(requests.get(i), results.get(i).getRequest());
+            Assertions.assertTrue(results.get(i).isSuccess());
+            Assertions.assertEquals("1", results.get(i).getResponse().get("a").asText());
+        }
+    }
+
+    @Test()
+    void getJsonResponses_unordered_boundedInFlight() throws Throwable {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        doAnswer(invocation -> {
+            Callback callback = invocation.getArgument(0);
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+            // Respond from another thread, as OkHttp does, so that calls overlap.
+            CompletableFuture.runAsync(() -> {
+                try {
+                    Thread.sleep(10);
+                    inFlight.decrementAndGet();
+
+                    callback.onResponse(this.mockCall, newMockResponse());
+                } catch (InterruptedException | IOException exception) {
+                    throw new CompletionException(exception);
+                }
+            });
+
+            return null;
+        }).when(this.mockCall).enqueue(any(Callback.class));
+
+        AtomicInteger pulled = new AtomicInteger();
+        Iterator<PdpRequest> requests = new Iterator<PdpRequest>() {
+            @Override
+            public boolean hasNext() {
+                return pulled.get() < 30;
+            }
+
+            @Override
+            public PdpRequest next() {
+                pulled.incrementAndGet();
+
+                return new PdpRequest();
+            }
+        };
+
+        try (Stream<PdpBulkResult> stream = staticPdpClient.getJsonResponses(requests, 3, false)) {
+            Iterator<PdpBulkResult> results = stream.iterator();
+
+            // Assert that only the requests needed to fill the in-flight window are read ahead.
+            Set<Long> indexes = new HashSet<Long>();
+            indexes.add(results.next().getIndex());
+            Assertions.assertTrue(pulled.get() <= 4);
+
+            while (results.hasNext()) {
+                indexes.add(results.next().getIndex());
+            }
+
+            // Assert that every request produced a result.
+            Assertions.assertEquals(30, pulled.get());
+            Assertions.assertEquals(30, indexes.size());
+        }
+
+        // Assert that concurrency never exceeded the in-flight bound.
+        Assertions.assertTrue(maxInFlight.get() <= 3);
+    }
+
+    @Test()
+    void getJsonResponses_failuresReported() throws Throwable {
+        doAnswer(invocation -> {
+            Callback callback = invocation.getArgument(0);
+            callback.onFailure(this.mockCall, new IOException());
+
+            return null;
+        }).when(this.mockCall).enqueue(any(Callback.class));
+
+        List<PdpBulkResult> results;
+        try (Stream<PdpBulkResult> stream = staticPdpClient.getJsonResponses(
+                Stream.of(new PdpRequest(), new PdpRequest()), 2, true)) {
+            results = stream.collect(Collectors.toList());
+        }
+
+        // Assert that failed evaluations don't end the stream.
+        Assertions.assertEquals(2, results.size());
+        for (PdpBulkResult result : results) {
+            Assertions.assertFalse(result.isSuccess());
+            Assertions.assertTrue(result.getFailure() instanceof IOException);
+            Assertions.assertNull(result.getResponse());
+        }
+    }
+
+    @Test()
+    void loadConfigurationFromFile() throws Throwable {
+        PdpClient client = new PdpClient.Builder()
+                .hostname("somehost")
+                .port(8182)
+                .build();
+
+        File file = File.createTempFile("pdp", ".properties");
+        file.deleteOnExit();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("PDP_POLICY_PATH=/v1/data/other\n");
+            writer.write("PDP_READ_TIMEOUT_MILLISECONDS=100\n");
+            writer.write("PDP_RETRY_MAX_ATTEMPTS=not-a-number\n");
+        }
+
+        PdpClientConfiguration before = client.getConfiguration();
+        client.loadConfigurationFromFile(file.toPath());
+
+        // Assert that values present in the file replaced the current ones, and the rest were kept.
+        Assertions.assertEquals("http://somehost:8182/v1/data/other", client.getPdpEndpoint());
+        Assertions.assertEquals(100, client.getReadTimeoutMilliseconds());
+        Assertions.assertEquals(before.getRetryMaxAttempts(), client.getRetryMaxAttempts());
+
+        // Assert that the previous snapshot was not mutated.
+        Assertions.assertEquals(PdpClient.DefaultReadTimeoutMilliseconds, before.getReadTimeoutMilliseconds());
+    }
+
+    @Test()
+    void loadConfigurationFromFile_sameTransport_connectionsReused() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer()) {
+            PdpClient client = server.clientBuilder().build();
+            client.getJsonResponse(new PdpRequest());
+
+            ConnectionPool before = client.getHttpClient().connectionPool();
+
+            File file = File.createTempFile("pdp", ".properties");
+            file.deleteOnExit();
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("PDP_READ_TIMEOUT_MILLISECONDS=1000\n");
+                writer.write("PDP_RETRY_MAX_ATTEMPTS=3\n");
+            }
+
+            client.loadConfigurationFromFile(file.toPath());
+            client.getJsonResponse(new PdpRequest());
+
+            // Assert that the second call reused the connection of the first one.
+            Assertions.assertSame(before, client.getHttpClient().connectionPool());
+            Assertions.assertEquals(2, server.getRequestCount());
+            Assertions.assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test()
+    void loadConfigurationFromFile_timeoutsChangedDuringCall_connectionsReused() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(300, 0)) {
+            PdpClient client = server.clientBuilder().build();
+
+            // A synchronous call only returns once it gave its connection back, so the later calls can't race it.
+            CompletableFuture<JsonNode> inFlight = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return client.getJsonResponse(new PdpRequest());
+                } catch (Throwable throwable) {
+                    throw new CompletionException(throwable);
+                }
+            });
+
+            long timeout = System.currentTimeMillis() + 5000;
+            while (server.getRequestCount() < 1 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+
+            File file = File.createTempFile("pdp", ".properties");
+            file.deleteOnExit();
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("PDP_READ_TIMEOUT_MILLISECONDS=1000\n");
+            }
+
+            // Reload while the call is in flight, before the derived client is created.
+            client.loadConfigurationFromFile(file.toPath());
+            server.latency(0, 0);
+            inFlight.get(5, TimeUnit.SECONDS);
+
+            client.getJsonResponse(new PdpRequest());
+            client.getJsonResponse(new PdpRequest());
+
+            // Assert that the call in flight gave its connection back to the pool, which the later calls reused.
+            Assertions.assertEquals(3, server.getRequestCount());
+            Assertions.assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test()
+    void loadConfigurationFromFile_timeoutsThenTransportChanged_previousClientDrained() throws Throwable {
+        try (StubPdpServer previousServer = new StubPdpServer();
+             StubPdpServer server = new StubPdpServer()) {
+            PdpClient client = previousServer.clientBuilder().build();
+            client.getJsonResponse(new PdpRequest());
+            OkHttpClient previous = client.getHttpClient();
+
+            File file = File.createTempFile("pdp", ".properties");
+            file.deleteOnExit();
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("PDP_READ_TIMEOUT_MILLISECONDS=1000\n");
+            }
+            client.loadConfigurationFromFile(file.toPath());
+
+            // Change the transport before any call creates the client derived for the new timeouts.
+            try (Writer writer = new FileWriter(file)) {
+                writer.write(String.format("PDP_PORT=%d\n", server.getPort()));
+            }
+            client.loadConfigurationFromFile(file.toPath());
+
+            // Assert that the client that was created was drained, although the replaced state never used it.
+            Assertions.assertTrue(previous.dispatcher().executorService().isShutdown());
+            Assertions.assertEquals(0, previous.connectionPool().connectionCount());
+
+            client.getJsonResponse(new PdpRequest());
+            Assertions.assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test()
+    void loadConfigurationFromFile_transportChanged_previousClientDrained() throws Throwable {
+        try (StubPdpServer previousServer = new StubPdpServer().latency(300, 0);
+             StubPdpServer server = new StubPdpServer()) {
+            List<PdpEvaluationMetrics> reported = Collections.synchronizedList(new ArrayList<PdpEvaluationMetrics>());
+            PdpClient client = previousServer.clientBuilder()
+                    .metricsListener(reported::add)
+                    .build();
+            OkHttpClient previous = client.getHttpClient();
+
+            List<CompletableFuture<JsonNode>> futures = new ArrayList<CompletableFuture<JsonNode>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(client.getJsonResponseAsync(new PdpRequest()));
+            }
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return client.getJsonResponse(new PdpRequest());
+                } catch (Throwable throwable) {
+                    throw new CompletionException(throwable);
+                }
+            }));
+
+            // Wait for the sync call and the asynchronous calls OkHttp runs per host, the others are queued.
+            long started = System.currentTimeMillis() + 5000;
+            while (previousServer.getRequestCount() < 6 && System.currentTimeMillis() < started) {
+                Thread.sleep(10);
+            }
+
+            File file = File.createTempFile("pdp", ".properties");
+            file.deleteOnExit();
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("PDP_PORT=" + server.getPort() + "\n");
+            }
+            client.loadConfigurationFromFile(file.toPath());
+
+            // Assert that the calls in progress or queued finished on the previous client, without being retried.
+            for (CompletableFuture<JsonNode> future : futures) {
+                Assertions.assertTrue(future.get(5, TimeUnit.SECONDS).get("result").asBoolean());
+            }
+            Assertions.assertEquals(futures.size(), reported.size());
+            for (PdpEvaluationMetrics metrics : reported) {
+                Assertions.assertEquals(1, metrics.getAttempts());
+            }
+
+            // Assert that the previous client was shut down, and its connections closed, once it was done.
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((!previous.dispatcher().executorService().isShutdown() || previous.connectionPool().connectionCount() > 0)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assertions.assertTrue(previous.dispatcher().executorService().isShutdown());
+            Assertions.assertEquals(0, previous.connectionPool().connectionCount());
+
+            int requests = server.getRequestCount();
+            client.getJsonResponse(new PdpRequest());
+            Assertions.assertEquals(requests + 1, server.getRequestCount());
+        }
+    }
+
+    @Test()
+    void watchConfigurationFile() throws Throwable {
+        PdpClient client = new PdpClient.Builder().build();
+
+        File file = File.createTempFile("pdp", ".properties");
+        file.deleteOnExit();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("PDP_PORT=8183\n");
+        }
+
+        try (PdpConfigurationWatcher watcher = client.watchConfigurationFile(file.toPath())) {
+            Assertions.assertEquals(8183, client.getPort());
+
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("PDP_PORT=8184\n");
+            }
+
+            // Assert that the change is picked up without an explicit reload.
+            long deadline = System.currentTimeMillis() + 10000;
+            while (client.getPort() != 8184 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(8184, client.getPort());
+        }
+    }
+
+    @Test()
+    void watchConfigurationFile_partialWrite_notApplied() throws Throwable {
+        PdpClient client = new PdpClient.Builder().build();
+
+        File file = File.createTempFile("pdp", ".properties");
+        file.deleteOnExit();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("PDP_HOSTNAME=localhost\n");
+        }
+
+        try (PdpConfigurationWatcher watcher = client.watchConfigurationFile(file.toPath())) {
+            Set<String> observed = Collections.synchronizedSet(new HashSet<String>());
+            AtomicBoolean writing = new AtomicBoolean(true);
+            Thread observer = new Thread(() -> {
+                while (writing.get()) {
+                    observed.add(client.getHostname());
+                }
+            });
+            observer.start();
+
+            // Write the file in two steps, within the quiet period of the watcher.
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("PDP_HOSTNAME=some");
+                writer.flush();
+                Thread.sleep(50);
+                writer.write("host\n");
+            }
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!client.getHostname().equals("somehost") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            writing.set(false);
+            observer.join();
+
+            // Assert that only the complete file was applied.
+            Assertions.assertEquals("somehost", client.getHostname());
+            Assertions.assertFalse(observed.contains("some"));
+        }
+    }
+
+    @Test()
+    void getJsonResponse_metricsSampled() throws Throwable {
+        List<PdpEvaluationMetrics> reported = new ArrayList<PdpEvaluationMetrics>();
+
+        PdpClient client = new PdpClient.Builder()
+                .metricsSampleRate(1)
+                .metricsInstrument(true)
+                .metricsListener(reported::add)
+                .build();
+        client.setMockHttpClient(this.mockHttpClient);
+
+        when(this.mockCall.execute()).thenReturn(newMockResponse(
+                "{\"result\":true,\"metrics\":{\"timer_rego_query_eval_ns\":1200,\"timer_server_handler_ns\":3400}}"));
+
+        JsonNode node = client.getJsonResponse(new PdpRequest());
+
+        // Assert that OPA was asked for metrics.
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(this.mockHttpClient).newCall(captor.capture());
+        Assertions.assertEquals("true", captor.getValue().url().queryParameter("metrics"));
+        Assertions.assertEquals("true", captor.getValue().url().queryParameter("instrument"));
+
+        // Assert that the server metrics were reported next to the client timings.
+        Assertions.assertTrue(node.get("result").asBoolean());
+        Assertions.assertEquals(1, reported.size());
+
+        PdpEvaluationMetrics metrics = reported.get(0);
+        Assertions.assertTrue(metrics.isSampled());
+        Assertions.assertEquals(1, metrics.getAttempts());
+        Assertions.assertEquals(200, metrics.getStatusCode());
+        Assertions.assertEquals(1200, metrics.getServerQueryEvalNanos());
+        Assertions.assertEquals(3400, metrics.getServerHandlerNanos());
+        Assertions.assertTrue(metrics.getRequestBytes() > 0);
+        Assertions.assertTrue(metrics.getResponseBytes() > 0);
+    }
+
+    /**
+     * A request value that is slow to serialize.
+     */
+    public static class SlowValue {
+        public String getValue() throws InterruptedException {
+            Thread.sleep(100);
+
+            return "slow";
+        }
+    }
+
+    @Test()
+    void getJsonResponse_metrics_encodeNotCountedAsNetwork() throws Throwable {
+        List<PdpEvaluationMetrics> reported = new ArrayList<PdpEvaluationMetrics>();
+
+        PdpClient client = new PdpClient.Builder()
+                .metricsListener(reported::add)
+                .build();
+        client.setMockHttpClient(this.mockHttpClient);
+
+        when(this.mockCall.execute()).thenReturn(this.mockResponse);
+
+        Map<String, Object> input = new HashMap<String, Object>();
+        input.put("slow", new SlowValue());
+
+        client.getJsonResponse(input);
+
+        // Assert that the slow serialization was counted as encoding only, since the mock call returns right away.
+        PdpEvaluationMetrics metrics = reported.get(0);
+        Assertions.assertTrue(metrics.getEncodeNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assertions.assertTrue(metrics.getNetworkNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test()
+    void getJsonResponse_failure_metricsReported() throws Throwable {
+        List<PdpEvaluationMetrics> reported = new ArrayList<PdpEvaluationMetrics>();
+
+        PdpClient client = new PdpClient.Builder()
+                .retryMaxAttempts(2)
+                .retryBackoffMilliseconds(1)
+                .metricsListener(reported::add)
+                .build();
+        client.setMockHttpClient(this.mockHttpClient);
+
+        when(this.mockCall.execute()).thenThrow(new IOException("connection reset"));
+
+        Assertions.assertThrows(FailsafeException.class, () -> client.getJsonResponse(new PdpRequest()));
+
+        // Assert that the failed evaluation was reported once, after its retries were exhausted.
+        Assertions.assertEquals(1, reported.size());
+
+        PdpEvaluationMetrics metrics = reported.get(0);
+        Assertions.assertEquals(2, metrics.getAttempts());
+        Assertions.assertEquals(0, metrics.getStatusCode());
+        Assertions.assertTrue(metrics.getFailure() instanceof IOException);
+    }
+
+    @Test()
+    void getMappedResponse_metricsNotSampled() throws Throwable {
+        List<PdpEvaluationMetrics> reported = new ArrayList<PdpEvaluationMetrics>();
+
+        PdpClient client = new PdpClient.Builder()
+                .metricsListener(reported::add)
+                .build();
+        client.setMockHttpClient(this.mockHttpClient);
+
+        when(this.mockCall.execute()).thenReturn(this.mockResponse);
+
+        client.getMappedResponse(new PdpRequest());
+
+        // Assert that metrics were not requested, but client timings were still reported.
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(this.mockHttpClient).newCall(captor.capture());
+        Assertions.assertNull(captor.getValue().url().queryParameter("metrics"));
+
+        Assertions.assertEquals(1, reported.size());
+        Assertions.assertFalse(reported.get(0).isSampled());
+        Assertions.assertTrue(reported.get(0).getServerMetrics().isEmpty());
+        Assertions.assertEquals(-1, reported.get(0).getServerQueryEvalNanos());
+    }
+
+    @Test()
+    void getJsonResponseAsync_concurrentCalls_maxConcurrentRequests() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(200, 0)) {
+            PdpClient client = server.clientBuilder()
+                    .maxConcurrentRequests(16)
+                    .build();
+
+            List<CompletableFuture<JsonNode>> futures = new ArrayList<CompletableFuture<JsonNode>>();
+            for (int i = 0; i < 24; i++) {
+                futures.add(client.getJsonResponseAsync(new PdpRequest()));
+            }
+            for (CompletableFuture<JsonNode> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            // Assert that more calls than OkHttp's default of 5 per host ran at once, up to the configured maximum.
+            Assertions.assertTrue(server.getMaxInFlight() > 5);
+            Assertions.assertTrue(server.getMaxInFlight() <= 16);
+        }
+    }
+
+    @Test()
+    void getJsonResponseAsync_serverError_retry() throws Throwable {
+        AtomicInteger attempts = new AtomicInteger();
+
+        doAnswer(invocation -> {
+            Callback callback = invocation.getArgument(0);
+
+            if (attempts.incrementAndGet() == 1) {
+                callback.onFailure(this.mockCall, new IOException());
+            } else {
+                callback.onResponse(this.mockCall, newMockResponse());
+            }
+
+            return null;
+        }).when(this.mockCall).enqueue(any(Callback.class));
+
+        JsonNode node = staticPdpClient.getJsonResponseAsync(new PdpRequest()).get(5, TimeUnit.SECONDS);
+
+        // Assert that there were exactly 2 attempts, none of them blocking.
+        verify(this.mockCall, times(2)).enqueue(any(Callback.class));
+        verify(this.mockCall, never()).execute();
+
+        Assertions.assertEquals("1", node.get("a").asText());
+        Assertions.assertEquals("2", node.get("b").asText());
+    }
+}
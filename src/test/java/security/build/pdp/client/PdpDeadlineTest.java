@@ -0,0 +1,131 @@
+package security.build.pdp.client;
+
+import net.jodah.failsafe.FailsafeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class PdpDeadlineTest {
+
+    /**
+     * Creates the HTTP client of the client up front, so that its one-time initialization isn't timed.
+     */
+    private static PdpClient warm(PdpClient client) {
+        client.getHttpClient();
+
+        return client;
+    }
+
+    private static long elapsedMilliseconds(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Asserts that the evaluation failed because its call was timed out by the deadline (InterruptedIOException), or
+     * because the deadline was exceeded before another attempt (PdpDeadlineExceededException, a subclass).
+     */
+    private static void assertDeadlineExceeded(Throwable throwable) {
+        Assertions.assertTrue(throwable.getCause() instanceof InterruptedIOException, String.valueOf(throwable.getCause()));
+    }
+
+    @Test()
+    void getJsonResponse_slowServer_deadlineExceeded() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(1000, 0)) {
+            PdpClient client = warm(server.clientBuilder()
+                    .retryMaxAttempts(3)
+                    .build());
+
+            long start = System.nanoTime();
+            FailsafeException exception = Assertions.assertThrows(FailsafeException.class,
+                    () -> client.getJsonResponse(new PdpRequest(), Duration.ofMillis(100)));
+            assertDeadlineExceeded(exception);
+
+            // Assert that the deadline cut the call short of the read timeout, and no retry was attempted without
+            // any time left.
+            Assertions.assertTrue(elapsedMilliseconds(start) < 500);
+            Assertions.assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test()
+    void getJsonResponse_resets_backoffClippedToDeadline() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().resets(1)) {
+            PdpClient client = warm(server.clientBuilder()
+                    .retryMaxAttempts(3)
+                    .retryBackoffMilliseconds(1000)
+                    .build());
+
+            long start = System.nanoTime();
+            FailsafeException exception = Assertions.assertThrows(FailsafeException.class,
+                    () -> client.getJsonResponse(new PdpRequest(), Duration.ofMillis(300)));
+
+            // The retries are either exhausted on a reset, or abandoned once the deadline can't fit another attempt.
+            Assertions.assertTrue(exception.getCause() instanceof IOException);
+
+            // Assert that a retry still happened within the deadline, despite a backoff longer than the deadline.
+            Assertions.assertTrue(elapsedMilliseconds(start) < 700);
+            Assertions.assertTrue(server.getRequestCount() >= 2);
+        }
+    }
+
+    @Test()
+    void getJsonResponse_inheritedDeadline() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(1000, 0)) {
+            PdpClient client = warm(server.clientBuilder().build());
+
+            long start = System.nanoTime();
+            try (PdpDeadline.Scope scope = PdpDeadline.after(Duration.ofMillis(100)).attach()) {
+                // An explicit deadline can't extend the inherited one.
+                FailsafeException exception = Assertions.assertThrows(FailsafeException.class,
+                        () -> client.getJsonResponse(new PdpRequest(), Duration.ofSeconds(10)));
+                assertDeadlineExceeded(exception);
+            }
+
+            Assertions.assertTrue(elapsedMilliseconds(start) < 500);
+            Assertions.assertNull(PdpDeadline.current());
+        }
+    }
+
+    @Test()
+    void getJsonResponseAsync_deadlineExceeded() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(1000, 0)) {
+            PdpClient client = warm(server.clientBuilder().build());
+
+            long start = System.nanoTime();
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class,
+                    () -> client.getJsonResponseAsync(new PdpRequest(), Duration.ofMillis(100)).get(5, TimeUnit.SECONDS));
+            assertDeadlineExceeded(exception);
+
+            Assertions.assertTrue(elapsedMilliseconds(start) < 500);
+        }
+    }
+
+    @Test()
+    void getJsonResponseAsync_map_deadlineExceeded() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(1000, 0)) {
+            PdpClient client = warm(server.clientBuilder().build());
+
+            long start = System.nanoTime();
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class,
+                    () -> client.getJsonResponseAsync(new HashMap<String, Object>(), Duration.ofMillis(100)).get(5, TimeUnit.SECONDS));
+            assertDeadlineExceeded(exception);
+
+            Assertions.assertTrue(elapsedMilliseconds(start) < 500);
+        }
+    }
+
+    @Test()
+    void getJsonResponse_deadlineMet() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().latency(5, 0)) {
+            PdpClient client = server.clientBuilder().build();
+
+            Assertions.assertTrue(client.getJsonResponse(new PdpRequest(), Duration.ofSeconds(5)).get("result").asBoolean());
+        }
+    }
+}
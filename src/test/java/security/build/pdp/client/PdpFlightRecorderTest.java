@@ -0,0 +1,120 @@
+package security.build.pdp.client;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.jodah.failsafe.FailsafeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+class PdpFlightRecorderTest {
+
+    private interface Evaluations {
+        void run() throws Throwable;
+    }
+
+    private static List<RecordedEvent> record(Evaluations evaluations) throws Throwable {
+        Path file = Files.createTempFile("pdp-client", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(PdpEvaluationEvent.Name);
+            recording.enable(PdpRetryEvent.Name);
+            recording.start();
+
+            evaluations.run();
+
+            recording.stop();
+            recording.dump(file);
+
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> eventsNamed(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    @Test()
+    void getJsonResponse_success_evaluationEventRecorded() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer()) {
+            PdpClient client = server.clientBuilder().build();
+
+            List<RecordedEvent> events = record(() -> client.getJsonResponse(new PdpRequest()));
+
+            List<RecordedEvent> evaluations = eventsNamed(events, PdpEvaluationEvent.Name);
+            Assertions.assertEquals(1, evaluations.size());
+
+            RecordedEvent event = evaluations.get(0);
+            Assertions.assertEquals(client.getPolicyPath(), event.getString("policyPath"));
+            Assertions.assertEquals(client.getPdpEndpoint(), event.getString("endpoint"));
+            Assertions.assertEquals("INTERACTIVE", event.getString("priority"));
+            Assertions.assertEquals(PdpFlightRecorder.OutcomeSuccess, event.getString("outcome"));
+            Assertions.assertNull(event.getString("failure"));
+            Assertions.assertEquals(1, event.getInt("attempts"));
+            Assertions.assertEquals(200, event.getInt("statusCode"));
+            Assertions.assertTrue(event.getLong("requestBytes") > 0);
+            Assertions.assertTrue(event.getLong("responseBytes") > 0);
+            Assertions.assertTrue(event.getDuration().toNanos() >= event.getDuration("networkDuration").toNanos());
+            Assertions.assertTrue(eventsNamed(events, PdpRetryEvent.Name).isEmpty());
+        }
+    }
+
+    @Test()
+    void getJsonResponse_resets_retryEventsRecorded() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer().resets(1)) {
+            PdpClient client = server.clientBuilder()
+                    .retryMaxAttempts(3)
+                    .retryBackoffMilliseconds(1)
+                    .build();
+
+            List<RecordedEvent> events = record(() -> {
+                // We are expecting the retries to be exhausted.
+                FailsafeException exception = Assertions.assertThrows(FailsafeException.class,
+                        () -> client.getJsonResponse(new PdpRequest()));
+                Assertions.assertTrue(exception.getCause() instanceof IOException);
+            });
+
+            List<RecordedEvent> retries = eventsNamed(events, PdpRetryEvent.Name);
+            Assertions.assertEquals(2, retries.size());
+            Assertions.assertEquals(1, retries.get(0).getInt("attempt"));
+            Assertions.assertEquals(2, retries.get(1).getInt("attempt"));
+            Assertions.assertNotNull(retries.get(0).getString("failure"));
+
+            List<RecordedEvent> evaluations = eventsNamed(events, PdpEvaluationEvent.Name);
+            Assertions.assertEquals(1, evaluations.size());
+            Assertions.assertEquals(PdpFlightRecorder.OutcomeFailure, evaluations.get(0).getString("outcome"));
+            Assertions.assertEquals(3, evaluations.get(0).getInt("attempts"));
+        }
+    }
+
+    @Test()
+    void getJsonResponseAsync_success_evaluationEventRecorded() throws Throwable {
+        try (StubPdpServer server = new StubPdpServer()) {
+            PdpClient client = server.clientBuilder().build();
+
+            List<RecordedEvent> events = record(() ->
+                    client.getJsonResponseAsync(new PdpRequest(), PdpPriority.BACKGROUND).get(5, TimeUnit.SECONDS));
+
+            List<RecordedEvent> evaluations = eventsNamed(events, PdpEvaluationEvent.Name);
+            Assertions.assertEquals(1, evaluations.size());
+            Assertions.assertEquals("BACKGROUND", evaluations.get(0).getString("priority"));
+            Assertions.assertEquals(PdpFlightRecorder.OutcomeSuccess, evaluations.get(0).getString("outcome"));
+        }
+    }
+
+    @Test()
+    void beginEvaluation_notRecording_noEventStarted() {
+        Assertions.assertNull(PdpFlightRecorder.beginEvaluation());
+    }
+}
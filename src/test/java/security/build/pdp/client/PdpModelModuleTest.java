@@ -0,0 +1,109 @@
+package security.build.pdp.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class PdpModelModuleTest {
+
+    private final ObjectMapper beanMapper = new ObjectMapper();
+    private final ObjectMapper moduleMapper = new ObjectMapper().registerModule(new PdpModelModule());
+
+    /**
+     * An input extended by an application with its own field.
+     */
+    static class TenantInput extends PdpRequestInput {
+        public String tenant = "acme";
+    }
+
+    /**
+     * A request extended by an application with its own field.
+     */
+    static class TracedRequest extends PdpRequest {
+        public String traceId = "4bf92f35";
+
+        TracedRequest(PdpRequestInput input) {
+            super(input);
+        }
+    }
+
+    private static PdpRequest newRequest() {
+        Map<String, String[]> query = new HashMap<>();
+        query.put("q", new String[]{"1", "2"});
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer token");
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("owner", "alice");
+
+        return new PdpRequest(new PdpRequestInput(
+                new PdpRequestIncomingHttp("https", "GET", "/documents", query, headers),
+                new PdpRequestResources(new String[]{"read", "write"}, attributes),
+                new PdpConnectionTuple("10.0.0.1", 51234),
+                new PdpConnectionTuple("10.0.0.2", 443)));
+    }
+
+    @Test()
+    void serialize_fullRequest_matchesBeanBinding() throws Throwable {
+        PdpRequest request = newRequest();
+
+        JsonNode expected = beanMapper.readTree(beanMapper.writeValueAsString(request));
+        JsonNode actual = moduleMapper.readTree(moduleMapper.writeValueAsString(request));
+
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test()
+    void serialize_emptyRequest_matchesBeanBinding() throws Throwable {
+        PdpRequest request = new PdpRequest(new PdpRequestInput());
+
+        JsonNode expected = beanMapper.readTree(beanMapper.writeValueAsString(request));
+        JsonNode actual = moduleMapper.readTree(moduleMapper.writeValueAsString(request));
+
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test()
+    void deserialize_fullRequest_roundTrips() throws Throwable {
+        PdpRequest request = newRequest();
+
+        PdpRequest actual = moduleMapper.readValue(moduleMapper.writeValueAsString(request), PdpRequest.class);
+
+        Assertions.assertEquals(
+                beanMapper.readTree(beanMapper.writeValueAsString(request)),
+                beanMapper.readTree(beanMapper.writeValueAsString(actual)));
+        Assertions.assertEquals("/documents", actual.getInput().getRequest().getPath());
+        Assertions.assertArrayEquals(new String[]{"1", "2"}, actual.getInput().getRequest().getQuery().get("q"));
+        Assertions.assertEquals(443, actual.getInput().getDestination().getPort());
+    }
+
+    @Test()
+    void serialize_subclasses_matchesBeanBinding() throws Throwable {
+        PdpRequest request = new TracedRequest(new TenantInput());
+
+        JsonNode expected = beanMapper.readTree(beanMapper.writeValueAsString(request));
+        JsonNode actual = moduleMapper.readTree(moduleMapper.writeValueAsString(request));
+
+        // Assert that the fields added by subclasses, at the top and nested, are written.
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals("4bf92f35", actual.get("traceId").asText());
+        Assertions.assertEquals("acme", actual.get("input").get("tenant").asText());
+    }
+
+    @Test()
+    void serialize_nestedSubclass_matchesBeanBinding() throws Throwable {
+        PdpRequest request = new PdpRequest(new TenantInput());
+
+        JsonNode expected = beanMapper.readTree(beanMapper.writeValueAsString(request));
+        JsonNode actual = moduleMapper.readTree(moduleMapper.writeValueAsString(request));
+
+        // Assert that a subclass inside a model class written by the module keeps its fields.
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals("acme", actual.get("input").get("tenant").asText());
+    }
+}
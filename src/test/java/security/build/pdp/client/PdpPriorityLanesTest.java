@@ -0,0 +1,245 @@
+package security.build.pdp.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class PdpPriorityLanesTest {
+
+    @Test()
+    void acquire_weightedScheduling() {
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(1)
+                .weight(PdpPriority.INTERACTIVE, 4)
+                .weight(PdpPriority.BACKGROUND, 1)
+                .build();
+
+        // Hold the only slot, so that every following call is queued.
+        Assertions.assertTrue(lanes.acquire(PdpPriority.BACKGROUND).isDone());
+
+        List<PdpPriority> granted = Collections.synchronizedList(new ArrayList<PdpPriority>());
+        for (int i = 0; i < 10; i++) {
+            lanes.acquire(PdpPriority.BACKGROUND).thenRun(() -> granted.add(PdpPriority.BACKGROUND));
+            lanes.acquire(PdpPriority.INTERACTIVE).thenRun(() -> granted.add(PdpPriority.INTERACTIVE));
+        }
+
+        lanes.release(PdpPriority.BACKGROUND);
+        for (int i = 0; i < 20; i++) {
+            lanes.release(granted.get(i));
+        }
+
+        // Assert that while both lanes were waiting, slots were shared 4 to 1, and the background lane was not starved.
+        List<PdpPriority> firstTen = granted.subList(0, 10);
+        Assertions.assertEquals(8, Collections.frequency(firstTen, PdpPriority.INTERACTIVE));
+        Assertions.assertEquals(2, Collections.frequency(firstTen, PdpPriority.BACKGROUND));
+        Assertions.assertEquals(20, granted.size());
+    }
+
+    @Test()
+    void release_immediateReleases_noRecursion() {
+        int queued = 20000;
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(1)
+                .queueCapacity(PdpPriority.BACKGROUND, queued)
+                .build();
+
+        // Hold the only slot, and queue calls that give their slot back as soon as it is granted, like attempts that
+        // fail before reaching the network.
+        Assertions.assertTrue(lanes.acquire(PdpPriority.BACKGROUND).isDone());
+
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        CountDownLatch released = new CountDownLatch(queued);
+        for (int i = 0; i < queued; i++) {
+            lanes.acquire(PdpPriority.BACKGROUND)
+                    .thenRun(() -> {
+                        lanes.release(PdpPriority.BACKGROUND);
+                        released.countDown();
+                    })
+                    .exceptionally(failure -> {
+                        failures.add(failure);
+
+                        return null;
+                    });
+        }
+
+        lanes.release(PdpPriority.BACKGROUND);
+
+        // Assert that every call was granted without overflowing the stack of the releasing thread.
+        Assertions.assertTrue(failures.isEmpty());
+        Assertions.assertEquals(0, released.getCount());
+
+        PdpPriorityLaneStats stats = lanes.getStats(PdpPriority.BACKGROUND);
+        Assertions.assertEquals(0, stats.getQueued());
+        Assertions.assertEquals(0, stats.getInFlight());
+    }
+
+    @Test()
+    void acquire_queueFull_rejected() {
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(1)
+                .queueCapacity(PdpPriority.BACKGROUND, 2)
+                .build();
+
+        lanes.acquire(PdpPriority.BACKGROUND);
+        lanes.acquire(PdpPriority.BACKGROUND);
+        lanes.acquire(PdpPriority.BACKGROUND);
+
+        Assertions.assertThrows(RejectedExecutionException.class, () -> lanes.acquire(PdpPriority.BACKGROUND));
+
+        // Assert that a full background queue doesn't reject interactive calls.
+        Assertions.assertFalse(lanes.acquire(PdpPriority.INTERACTIVE).isDone());
+
+        PdpPriorityLaneStats stats = lanes.getStats(PdpPriority.BACKGROUND);
+        Assertions.assertEquals(1, stats.getRejected());
+        Assertions.assertEquals(2, stats.getQueued());
+        Assertions.assertEquals(1, stats.getInFlight());
+    }
+
+    @Test()
+    void acquire_laneBudget() {
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(4)
+                .maxConcurrentRequests(PdpPriority.BACKGROUND, 1)
+                .build();
+
+        Assertions.assertTrue(lanes.acquire(PdpPriority.BACKGROUND).isDone());
+
+        // Assert that the background lane can't use more than its budget, even with free slots.
+        CompletableFuture<Void> queued = lanes.acquire(PdpPriority.BACKGROUND);
+        Assertions.assertFalse(queued.isDone());
+        Assertions.assertTrue(lanes.acquire(PdpPriority.INTERACTIVE).isDone());
+
+        lanes.release(PdpPriority.BACKGROUND);
+        Assertions.assertTrue(queued.isDone());
+    }
+
+    @Test()
+    void acquireBlocking_deadlineExceeded() {
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(1)
+                .build();
+
+        lanes.acquire(PdpPriority.INTERACTIVE);
+
+        Assertions.assertThrows(PdpDeadlineExceededException.class,
+                () -> lanes.acquireBlocking(PdpPriority.INTERACTIVE, PdpDeadline.after(Duration.ofMillis(20))));
+
+        // Assert that the abandoned call left the queue, and its slot isn't leaked.
+        Assertions.assertEquals(0, lanes.getStats(PdpPriority.INTERACTIVE).getQueued());
+
+        lanes.release(PdpPriority.INTERACTIVE);
+        Assertions.assertEquals(0, lanes.getStats(PdpPriority.INTERACTIVE).getInFlight());
+        Assertions.assertTrue(lanes.acquire(PdpPriority.INTERACTIVE).isDone());
+    }
+
+    @Test()
+    void acquireAsync_deadlineExceeded() throws Throwable {
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(1)
+                .build();
+
+        lanes.acquire(PdpPriority.INTERACTIVE);
+
+        CompletableFuture<Void> granted = lanes.acquireAsync(PdpPriority.INTERACTIVE, PdpDeadline.after(Duration.ofMillis(20)));
+
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> granted.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(exception.getCause() instanceof PdpDeadlineExceededException);
+
+        // Assert that the abandoned call left the queue without holding its place, and its slot isn't leaked.
+        Assertions.assertEquals(0, lanes.getStats(PdpPriority.INTERACTIVE).getQueued());
+
+        lanes.release(PdpPriority.INTERACTIVE);
+        Assertions.assertEquals(0, lanes.getStats(PdpPriority.INTERACTIVE).getInFlight());
+        Assertions.assertTrue(lanes.acquire(PdpPriority.INTERACTIVE).isDone());
+    }
+
+    @Test()
+    void getJsonResponseAsync_queued_deadlineExceeded() throws Throwable {
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(1)
+                .build();
+
+        try (StubPdpServer server = new StubPdpServer().latency(1000, 0)) {
+            PdpClient client = server.clientBuilder()
+                    .priorityLanes(lanes)
+                    .build();
+            client.getHttpClient();
+
+            // Hold the only slot with a slow call.
+            CompletableFuture<JsonNode> slow = client.getJsonResponseAsync(new PdpRequest());
+
+            long start = System.nanoTime();
+            CompletableFuture<JsonNode> queued = client.getJsonResponseAsync(new PdpRequest(), Duration.ofMillis(100));
+
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(exception.getCause() instanceof PdpDeadlineExceededException);
+
+            // Assert that the call failed at its deadline rather than once the slot was freed.
+            Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+            Assertions.assertEquals(0, lanes.getStats(PdpPriority.INTERACTIVE).getQueued());
+
+            slow.get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(0, lanes.getStats(PdpPriority.INTERACTIVE).getInFlight());
+            Assertions.assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test()
+    void getJsonResponse_interactiveNotStarvedByBackground() throws Throwable {
+        PdpPriorityLanes lanes = new PdpPriorityLanes.Builder()
+                .maxConcurrentRequests(2)
+                .build();
+
+        try (StubPdpServer server = new StubPdpServer().latency(20, 0)) {
+            PdpClient client = server.clientBuilder()
+                    .priorityLanes(lanes)
+                    .build();
+
+            // Flood the lanes with background traffic from more callers than there are slots.
+            ExecutorService interactive = Executors.newSingleThreadExecutor();
+            Future<Long> interactiveWait;
+
+            try (Stream<PdpBulkResult> background = client.getJsonResponses(
+                    Stream.generate(PdpRequest::new).limit(60), 8, false, PdpPriority.BACKGROUND)) {
+                interactiveWait = interactive.submit(() -> {
+                    Thread.sleep(100);
+
+                    long start = System.nanoTime();
+                    try {
+                        for (int i = 0; i < 5; i++) {
+                            client.getJsonResponse(new PdpRequest(), PdpPriority.INTERACTIVE);
+                        }
+                    } catch (Throwable throwable) {
+                        throw new Exception(throwable);
+                    }
+
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 5;
+                });
+
+                List<PdpBulkResult> results = background.collect(Collectors.toList());
+                Assertions.assertTrue(results.stream().allMatch(PdpBulkResult::isSuccess));
+            }
+
+            long interactiveLatency = interactiveWait.get(10, TimeUnit.SECONDS);
+            interactive.shutdown();
+
+            PdpPriorityLaneStats interactiveStats = lanes.getStats(PdpPriority.INTERACTIVE);
+            PdpPriorityLaneStats backgroundStats = lanes.getStats(PdpPriority.BACKGROUND);
+
+            // Assert that interactive calls jumped the background queue: each waited for at most about one call to
+            // finish, while background calls waited behind each other.
+            Assertions.assertEquals(5, interactiveStats.getAdmitted());
+            Assertions.assertEquals(60, backgroundStats.getAdmitted());
+            Assertions.assertTrue(interactiveStats.getAverageWaitNanos() < backgroundStats.getAverageWaitNanos());
+            Assertions.assertTrue(interactiveLatency < 200, String.format("interactive latency %dms", interactiveLatency));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package security.build.pdp.client;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for a Policy Decision Point, which can inject faults into its responses.
+ *
+ * Every request is answered with an allow decision, unless one of the configured faults applies:
+ * - latency: every response is delayed by a base latency plus an exponentially distributed tail
+ * - connection resets: the connection is dropped after reading the request
+ * - 5xx bursts: the next N requests are answered with a 500
+ * - slow bodies: the response body stalls after the headers, for longer than the client read timeout allows
+ */
+class StubPdpServer implements Closeable {
+
+    static final String AllowBody = "{\"result\":true}";
+    static final String ErrorBody = "{\"code\":\"internal_error\",\"message\":\"injected failure\"}";
+
+    private final MockWebServer server = new MockWebServer();
+
+    private volatile long latencyMilliseconds = 0;
+    private volatile long latencyTailMeanMilliseconds = 0;
+    private volatile double resetProbability = 0;
+    private volatile double slowBodyProbability = 0;
+    private volatile long slowBodyMilliseconds = 0;
+    private final AtomicInteger errorBurst = new AtomicInteger();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger faults = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    StubPdpServer() throws IOException {
+        this.server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                return respond(request);
+            }
+        });
+        this.server.start();
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        this.requests.incrementAndGet();
+        if (request.getSequenceNumber() == 0) {
+            this.connections.incrementAndGet();
+        }
+
+        // Responses are written after dispatch returns, so in-flight is tracked over the simulated latency instead.
+        long latency = this.latencyMilliseconds;
+        if (this.latencyTailMeanMilliseconds > 0) {
+            latency += (long) (-Math.log(1 - random.nextDouble()) * this.latencyTailMeanMilliseconds);
+        }
+
+        this.maxInFlight.accumulateAndGet(this.inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.inFlight.decrementAndGet();
+        }
+
+        if (random.nextDouble() < this.resetProbability) {
+            this.faults.incrementAndGet();
+
+            return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+        }
+
+        if (this.errorBurst.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+            this.faults.incrementAndGet();
+
+            return new MockResponse().setResponseCode(500).setBody(ErrorBody);
+        }
+
+        MockResponse response = new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(AllowBody);
+
+        if (random.nextDouble() < this.slowBodyProbability) {
+            this.faults.incrementAndGet();
+
+            // OkHttp's read timeout applies to each read, so only a stall longer than it fails the call.
+            response.setBodyDelay(this.slowBodyMilliseconds, TimeUnit.MILLISECONDS);
+        }
+
+        return response;
+    }
+
+    StubPdpServer latency(long latencyMilliseconds, long latencyTailMeanMilliseconds) {
+        this.latencyMilliseconds = latencyMilliseconds;
+        this.latencyTailMeanMilliseconds = latencyTailMeanMilliseconds;
+
+        return this;
+    }
+
+    StubPdpServer resets(double resetProbability) {
+        this.resetProbability = resetProbability;
+
+        return this;
+    }
+
+    /**
+     * @param slowBodyProbability the fraction of responses whose body stalls.
+     * @param stallMilliseconds how long the body stalls, which should exceed the client read timeout.
+     */
+    StubPdpServer slowBodies(double slowBodyProbability, long stallMilliseconds) {
+        this.slowBodyProbability = slowBodyProbability;
+        this.slowBodyMilliseconds = stallMilliseconds;
+
+        return this;
+    }
+
+    StubPdpServer errorBurst(int count) {
+        this.errorBurst.addAndGet(count);
+
+        return this;
+    }
+
+    PdpClient.Builder clientBuilder() {
+        return new PdpClient.Builder()
+                .hostname(this.server.getHostName())
+                .port(this.server.getPort())
+                .policyPath("/authz");
+    }
+
+    int getPort() {
+        return this.server.getPort();
+    }
+
+    /**
+     * @return the number of requests received, including the retries.
+     */
+    int getRequestCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return the number of connections that sent at least one request.
+     */
+    int getConnectionCount() {
+        return this.connections.get();
+    }
+
+    /**
+     * @return the number of requests that were answered with a fault.
+     */
+    int getFaultCount() {
+        return this.faults.get();
+    }
+
+    int getMaxInFlight() {
+        return this.maxInFlight.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.server.shutdown();
+    }
+}
@@ -0,0 +1,150 @@
+package security.build.pdp.client.servlet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import security.build.pdp.client.PdpClient;
+import security.build.pdp.client.PdpRequest;
+import security.build.pdp.client.PdpRequestIncomingHttp;
+import security.build.pdp.client.PdpRequestResources;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+class PdpServletRequestsTest {
+
+    private HttpServletRequest mockRequest;
+
+    @BeforeEach
+    public void beforeEach() {
+        this.mockRequest = mock(HttpServletRequest.class);
+
+        when(this.mockRequest.getScheme()).thenReturn("http");
+        when(this.mockRequest.getMethod()).thenReturn("GET");
+        when(this.mockRequest.getRequestURI()).thenReturn("/websecurity");
+        when(this.mockRequest.getQueryString()).thenReturn("a=1&a=2&b=x%20y&flag");
+        when(this.mockRequest.getHeaderNames())
+                .thenAnswer(invocation -> Collections.enumeration(Arrays.asList("host", "accept")));
+        when(this.mockRequest.getHeader("host")).thenReturn("localhost:8080");
+        when(this.mockRequest.getHeader("accept")).thenReturn("*/*");
+        when(this.mockRequest.getRemoteAddr()).thenReturn("172.19.0.1");
+        when(this.mockRequest.getRemotePort()).thenReturn(51234);
+        when(this.mockRequest.getLocalAddr()).thenReturn("172.19.0.2");
+        when(this.mockRequest.getLocalPort()).thenReturn(8080);
+    }
+
+    @Test()
+    void incomingHttp_lazyViews() {
+        PdpRequestIncomingHttp incoming = PdpServletRequests.incomingHttp(this.mockRequest);
+
+        // Assert that nothing was read from the request until the views are used.
+        verify(this.mockRequest, never()).getQueryString();
+        verify(this.mockRequest, never()).getHeaderNames();
+
+        Assertions.assertEquals("localhost:8080", incoming.getHeaders().get("host"));
+        Assertions.assertArrayEquals(new String[]{"1", "2"}, incoming.getQuery().get("a"));
+        Assertions.assertArrayEquals(new String[]{"x y"}, incoming.getQuery().get("b"));
+        Assertions.assertArrayEquals(new String[]{""}, incoming.getQuery().get("flag"));
+
+        // Assert that form parameters in the body are never consumed.
+        verify(this.mockRequest, never()).getParameterMap();
+    }
+
+    @Test()
+    void pdpRequest_serialization() throws Throwable {
+        PdpRequest request = PdpServletRequests.pdpRequest(this.mockRequest, new PdpRequestResources());
+
+        JsonNode node = new ObjectMapper().valueToTree(request);
+        JsonNode input = node.get("input");
+
+        Assertions.assertEquals("/websecurity", input.get("request").get("path").asText());
+        Assertions.assertEquals("*/*", input.get("request").get("headers").get("accept").asText());
+        Assertions.assertEquals(2, input.get("request").get("headers").size());
+        Assertions.assertEquals("2", input.get("request").get("query").get("a").get(1).asText());
+        Assertions.assertEquals("172.19.0.1", input.get("source").get("ipAddress").asText());
+        Assertions.assertEquals(51234, input.get("source").get("port").asInt());
+        Assertions.assertEquals(8080, input.get("destination").get("port").asInt());
+    }
+
+    @Test()
+    void evaluateAsync_handlerThrows_contextCompletedWithError() throws Throwable {
+        JsonNode decision = new ObjectMapper().readTree("{\"result\":true}");
+
+        PdpClient mockClient = mock(PdpClient.class);
+        when(mockClient.getJsonResponseAsync(any(PdpRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(decision));
+
+        HttpServletResponse mockResponse = mock(HttpServletResponse.class);
+        AsyncContext mockContext = mock(AsyncContext.class);
+        when(mockContext.getResponse()).thenReturn(mockResponse);
+        when(this.mockRequest.startAsync(any(ServletRequest.class), any(ServletResponse.class))).thenReturn(mockContext);
+
+        PdpServletRequests.evaluateAsync(mockClient, this.mockRequest, mockResponse, new PdpRequestResources(),
+                (context, result, failure) -> {
+                    throw new IllegalStateException("broken handler");
+                });
+
+        // Assert that the request doesn't hang until the container's asynchronous timeout.
+        verify(mockResponse).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        verify(mockContext).complete();
+    }
+
+    @Test()
+    void evaluateAsync_contextTimeout_deadlinePassed() throws Throwable {
+        PdpClient mockClient = mock(PdpClient.class);
+        when(mockClient.getJsonResponseAsync(any(PdpRequest.class), any(Duration.class)))
+                .thenReturn(new CompletableFuture<JsonNode>());
+
+        AsyncContext mockContext = mock(AsyncContext.class);
+        when(mockContext.getTimeout()).thenReturn(30000L);
+        when(this.mockRequest.startAsync(any(ServletRequest.class), any(ServletResponse.class))).thenReturn(mockContext);
+
+        PdpServletRequests.evaluateAsync(mockClient, this.mockRequest, mock(HttpServletResponse.class),
+                new PdpRequestResources(), (context, result, failure) -> context.complete());
+
+        // Assert that the evaluation ends before the container times out the request, leaving time for the handler.
+        verify(mockClient).getJsonResponseAsync(any(PdpRequest.class),
+                eq(Duration.ofMillis(30000 - PdpServletRequests.AsyncTimeoutHandlerMilliseconds)));
+        verify(mockClient, never()).getJsonResponseAsync(any(PdpRequest.class));
+    }
+
+    @Test()
+    void evaluateAsync_viewsReadOnce() throws Throwable {
+        PdpClient mockClient = mock(PdpClient.class);
+        when(mockClient.getJsonResponseAsync(any(PdpRequest.class)))
+                .thenReturn(new CompletableFuture<JsonNode>());
+
+        when(this.mockRequest.startAsync(any(ServletRequest.class), any(ServletResponse.class)))
+                .thenReturn(mock(AsyncContext.class));
+
+        PdpServletRequests.evaluateAsync(mockClient, this.mockRequest, mock(HttpServletResponse.class),
+                new PdpRequestResources(), (context, result, failure) -> context.complete());
+
+        ArgumentCaptor<PdpRequest> captor = ArgumentCaptor.forClass(PdpRequest.class);
+        verify(mockClient).getJsonResponseAsync(captor.capture());
+
+        // Serialize the request as every retried attempt would.
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode first = mapper.valueToTree(captor.getValue());
+        JsonNode second = mapper.valueToTree(captor.getValue());
+
+        // Assert that the servlet request was read once, on the calling thread, and not by the attempts.
+        verify(this.mockRequest, times(1)).getHeaderNames();
+        verify(this.mockRequest, times(1)).getQueryString();
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals("*/*", second.get("input").get("request").get("headers").get("accept").asText());
+        Assertions.assertEquals("2", second.get("input").get("request").get("query").get("a").get(1).asText());
+    }
+}